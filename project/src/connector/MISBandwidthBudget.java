@@ -0,0 +1,164 @@
+package connector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+import data_types.MIS3DPosition;
+import data_types.MISPosition;
+
+/**
+ * Outbound byte budget of one client. Broadcast frames wait here until the server
+ * loop packs them: every tick each waiting frame gains priority by its weight, scaled
+ * down with the distance between its origin and the clients view, and the frames with
+ * the highest priority are queued until the bytes of the tick are used up.
+ * A newer frame of the same source replaces a waiting one, so a slow client holds at
+ * most one frame per source instead of an ever growing queue. Reliable frames are never
+ * replaced. Sources implementing MISDropListener hear of frames the connector rejected.
+ * Only used by the server loop thread.
+ */
+public class MISBandwidthBudget {
+
+	//Distance at which the priority gain is halved
+	public static final int DISTANCE_SCALE = 64;
+
+	private static final Comparator<Update> HIGHEST_FIRST = new Comparator<Update>() {
+		@Override
+		public int compare(Update a, Update b) {
+			return Float.compare(b.priority, a.priority);
+		}
+	};
+
+	private final ArrayList<Update> pending;
+	//Newest waiting update per source
+	private final HashMap<Object, Update> bySource;
+	//Bytes that may still be sent, negative after a frame larger than the rest of the budget
+	private long credit;
+	//Frames replaced before they were sent
+	public long superseded;
+	//Set by release, the client is gone
+	private boolean released;
+
+	public MISBandwidthBudget(){
+		pending = new ArrayList<Update>();
+		bySource = new HashMap<Object, Update>();
+	}
+
+	/**
+	 * Lets the frame wait for the next pack, replacing the waiting frame of the same source
+	 * unless one of them is reliable
+	 * @param source the broadcast or other sender, null to never be replaced
+	 * @param frame owned by the budget from here on
+	 * @param weight priority gained per tick
+	 * @param origin where the update happens, null for no distance scaling
+	 * @return false when the client is gone, the frame is released
+	 */
+	public boolean offer(Object source, MISPooledBuffer frame, float weight, MISPosition origin){
+		if(released){
+			frame.release();
+			return false;
+		}
+		Update update = source != null ? bySource.get(source) : null;
+		if(update != null && !update.frame.reliable && !frame.reliable){
+			update.frame.release();
+			update.frame = frame;
+			update.weight = weight;
+			update.origin = origin;
+			superseded++;
+			return true;
+		}
+		update = new Update();
+		update.source = source;
+		update.frame = frame;
+		update.weight = weight;
+		update.origin = origin;
+		pending.add(update);
+		if(source != null){
+			bySource.put(source, update);
+		}
+		return true;
+	}
+
+	/**
+	 * @param source
+	 * @return true when the newest frame of the source is still waiting
+	 */
+	public boolean isPending(Object source){
+		return bySource.containsKey(source);
+	}
+
+	public int size(){
+		return pending.size();
+	}
+
+	/**
+	 * Queues the waiting frames with the highest priority on the clients connector,
+	 * at least one frame while there is credit left. Unused bytes do not carry over.
+	 * @param client
+	 * @param bytesPerTick
+	 * @return number of frames queued
+	 */
+	public int pack(MISClient client, long bytesPerTick){
+		credit = Math.min(credit + bytesPerTick, bytesPerTick);
+		if(pending.isEmpty()){
+			return 0;
+		}
+		MISPosition view = client.viewPosition;
+		for(int i = 0; i < pending.size(); i++){
+			Update update = pending.get(i);
+			update.priority += update.weight * distanceFactor(view, update.origin);
+		}
+		Collections.sort(pending, HIGHEST_FIRST);
+		int taken = 0;
+		int sent = 0;
+		while(credit > 0 && taken < pending.size()){
+			Update update = pending.get(taken++);
+			if(update.source != null && bySource.get(update.source) == update){
+				bySource.remove(update.source);
+			}
+			credit -= update.frame.buffer.remaining();
+			if(client.connector.enqueue(client, update.frame)){
+				sent++;
+			} else if(update.source instanceof MISDropListener){
+				((MISDropListener) update.source).frameDropped(client);
+			}
+		}
+		pending.subList(0, taken).clear();
+		return sent;
+	}
+
+	/**
+	 * Releases every waiting frame and the ones offered later, used when the client goes away
+	 */
+	public void release(){
+		released = true;
+		for(int i = 0; i < pending.size(); i++){
+			pending.get(i).frame.release();
+		}
+		pending.clear();
+		bySource.clear();
+	}
+
+	private static float distanceFactor(MISPosition view, MISPosition origin){
+		if(view == null || origin == null){
+			return 1f;
+		}
+		double dx = view.x - origin.x;
+		double dy = view.y - origin.y;
+		double dz = 0;
+		if(view instanceof MIS3DPosition && origin instanceof MIS3DPosition){
+			dz = ((MIS3DPosition) view).z - ((MIS3DPosition) origin).z;
+		}
+		return (float)(1.0 / (1.0 + Math.sqrt(dx * dx + dy * dy + dz * dz) / DISTANCE_SCALE));
+	}
+
+	private static class Update {
+		Object source;
+		MISPooledBuffer frame;
+		float weight;
+		MISPosition origin;
+		float priority;
+	}
+
+}
@@ -0,0 +1,223 @@
+package connector;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of direct ByteBuffers in a few size classes. Every platform thread keeps a small cache
+ * of its own, overflow and refills go through a shared queue per size class. Virtual threads,
+ * one per client in the thread per client mode, use the shared queues only, their cache
+ * would strand its buffers when the thread ends.
+ * A sample of the acquired buffers is tracked, and a buffer that is garbage collected
+ * without being released is reported together with the place it was acquired.
+ */
+public class MISBufferPool {
+
+	public static final int[] SIZE_CLASSES = new int[]{256, 1024, 4 * 1024, 16 * 1024, 64 * 1024};
+	public static final int THREAD_CACHE_SIZE = 64;
+	public static final int SHARED_CACHE_SIZE = 4096;
+	public static final MISBufferPool POOL = new MISBufferPool();
+	//Thread.isVirtual, null before Java 21
+	private static final Method IS_VIRTUAL = isVirtualMethod();
+
+	//Every n-th acquired buffer is tracked for leaks, 1 tracks all and 0 turns tracking off
+	public static volatile int leakSampleRate = 128;
+
+	private final List<ConcurrentLinkedQueue<MISPooledBuffer>> shared;
+	private final AtomicInteger[] sharedSizes;
+	private final ThreadLocal<ThreadCache> caches;
+	private final ReferenceQueue<MISPooledBuffer> leakQueue;
+	private final Set<LeakTracker> trackers;
+	private final AtomicLong allocated;
+	private final AtomicLong leaks;
+
+	public MISBufferPool(){
+		shared = new ArrayList<ConcurrentLinkedQueue<MISPooledBuffer>>(SIZE_CLASSES.length);
+		sharedSizes = new AtomicInteger[SIZE_CLASSES.length];
+		for(int i = 0; i < SIZE_CLASSES.length; i++){
+			shared.add(new ConcurrentLinkedQueue<MISPooledBuffer>());
+			sharedSizes[i] = new AtomicInteger();
+		}
+		caches = new ThreadLocal<ThreadCache>(){
+			@Override
+			protected ThreadCache initialValue() {
+				return new ThreadCache(isVirtual(Thread.currentThread()) ? 0 : THREAD_CACHE_SIZE);
+			}
+		};
+		leakQueue = new ReferenceQueue<MISPooledBuffer>();
+		trackers = Collections.newSetFromMap(new ConcurrentHashMap<LeakTracker, Boolean>());
+		allocated = new AtomicLong();
+		leaks = new AtomicLong();
+	}
+
+	/**
+	 * Borrows a cleared buffer with at least the requested capacity
+	 * @param size in bytes
+	 * @return MISPooledBuffer, to be released by the last user
+	 */
+	public MISPooledBuffer acquire(int size){
+		reportLeaks();
+		int sizeClass = sizeClass(size);
+		ThreadCache cache = caches.get();
+		MISPooledBuffer pooled = null;
+		if(sizeClass < 0){
+			pooled = new MISPooledBuffer(this, -1, ByteBuffer.allocateDirect(size));
+			allocated.incrementAndGet();
+		} else {
+			pooled = cache.pop(sizeClass);
+			if(pooled == null){
+				pooled = shared.get(sizeClass).poll();
+				if(pooled != null){
+					sharedSizes[sizeClass].decrementAndGet();
+				}
+			}
+			if(pooled == null){
+				pooled = new MISPooledBuffer(this, sizeClass, ByteBuffer.allocateDirect(SIZE_CLASSES[sizeClass]));
+				allocated.incrementAndGet();
+			}
+		}
+		pooled.reset();
+		int sampleRate = leakSampleRate;
+		if(sampleRate > 0 && ++cache.acquired % sampleRate == 0){
+			pooled.tracker = new LeakTracker(pooled, leakQueue);
+			trackers.add(pooled.tracker);
+		}
+		return pooled;
+	}
+
+	void recycle(MISPooledBuffer pooled){
+		if(pooled.tracker != null){
+			trackers.remove(pooled.tracker);
+			pooled.tracker.clear();
+			pooled.tracker = null;
+		}
+		if(pooled.sizeClass < 0){
+			return;
+		}
+		if(caches.get().push(pooled)){
+			return;
+		}
+		if(sharedSizes[pooled.sizeClass].incrementAndGet() <= SHARED_CACHE_SIZE){
+			shared.get(pooled.sizeClass).add(pooled);
+		} else {
+			//Let the garbage collector free it
+			sharedSizes[pooled.sizeClass].decrementAndGet();
+		}
+	}
+
+	private static Method isVirtualMethod(){
+		try {
+			return Thread.class.getMethod("isVirtual");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static boolean isVirtual(Thread thread){
+		if(IS_VIRTUAL == null){
+			return false;
+		}
+		try {
+			return (Boolean) IS_VIRTUAL.invoke(thread);
+		} catch (ReflectiveOperationException e) {
+			return false;
+		}
+	}
+
+	private static int sizeClass(int size){
+		for(int i = 0; i < SIZE_CLASSES.length; i++){
+			if(size <= SIZE_CLASSES[i]){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void reportLeaks(){
+		Reference<? extends MISPooledBuffer> reference;
+		while((reference = leakQueue.poll()) != null){
+			LeakTracker tracker = (LeakTracker) reference;
+			if(trackers.remove(tracker)){
+				leaks.incrementAndGet();
+				System.err.println("LEAK: a pooled buffer of "+tracker.capacity+" bytes was garbage collected without release(), acquired at:");
+				tracker.acquiredAt.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @return number of direct buffers the pool had to allocate
+	 */
+	public long getAllocatedCount(){
+		return allocated.get();
+	}
+
+	/**
+	 * @return number of leaked buffers reported so far
+	 */
+	public long getLeakCount(){
+		reportLeaks();
+		return leaks.get();
+	}
+
+	static class LeakTracker extends PhantomReference<MISPooledBuffer> {
+
+		final Throwable acquiredAt;
+		final int capacity;
+
+		LeakTracker(MISPooledBuffer referent, ReferenceQueue<MISPooledBuffer> queue) {
+			super(referent, queue);
+			acquiredAt = new Throwable("Buffer acquired here");
+			capacity = referent.capacity();
+		}
+
+	}
+
+	private static class ThreadCache {
+
+		private final MISPooledBuffer[][] stacks;
+		private final int[] sizes;
+		private final int capacity;
+		private long acquired;
+
+		/**
+		 * @param capacity buffers per size class, 0 for a cache that keeps none
+		 */
+		ThreadCache(int capacity){
+			this.capacity = capacity;
+			stacks = new MISPooledBuffer[SIZE_CLASSES.length][capacity];
+			sizes = new int[SIZE_CLASSES.length];
+		}
+
+		MISPooledBuffer pop(int sizeClass){
+			if(sizes[sizeClass] == 0){
+				return null;
+			}
+			int index = --sizes[sizeClass];
+			MISPooledBuffer pooled = stacks[sizeClass][index];
+			stacks[sizeClass][index] = null;
+			return pooled;
+		}
+
+		boolean push(MISPooledBuffer pooled){
+			if(sizes[pooled.sizeClass] == capacity){
+				return false;
+			}
+			stacks[pooled.sizeClass][sizes[pooled.sizeClass]++] = pooled;
+			return true;
+		}
+
+	}
+
+}
@@ -0,0 +1,278 @@
+package connector;
+
+import java.net.SocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import data_types.MISPosition;
+import data_types.MISScene;
+import enums.MISOverflowPolicy;
+
+public class MISClient {
+
+	private static final AtomicInteger idCounter = new AtomicInteger();
+
+	public final int id;
+	public final MISConnector connector;
+	public SocketAddress address;
+	//The scene the client plays in, set by the server
+	public volatile MISScene scene;
+	//Number of symbol table keys queued for the client
+	public volatile int knownSymbols;
+	//Keys the client added to the symbol table, only touched by its connector thread
+	public int announcedSymbols;
+	//Held while queueing symbols, so they go out in id order
+	final Object symbolLock = new Object();
+	//Id of the newest scene snapshot the client acknowledged, -1 for none
+	public volatile long ackedSnapshot = -1;
+	//MISSnapshot.lastId() when the client joined its scene, acks of older snapshots are ignored
+	public volatile long joinedSnapshot;
+	//Area of interest, broadcasts with an origin only reach clients that see it
+	public volatile MISPosition viewPosition;
+	public volatile int viewRadius;
+
+	//Frames waiting to be written, already length prefixed
+	public final MISOutboundQueue outbound;
+	//Reliable frames waiting to be written, kept apart so they are never evicted and do not hold up the others
+	public final MISOutboundQueue reliableOutbound;
+	//Frame taken from the queue and not completely written yet, only used by the writing thread
+	public MISPooledBuffer writing;
+	//Frame taken from outbound while a reliable frame queued before it was still waiting, written after that one
+	private MISPooledBuffer held;
+	//Set by releaseOutbound, frames queued afterwards would never be taken and are released by their producer
+	private volatile boolean closed;
+	//Queued frame per source, newer frames of the source replace its content, for MISOverflowPolicy.DROP_SUPERSEDED
+	private volatile ConcurrentHashMap<Object, MISPooledBuffer> newest;
+	//Set while the client is queued for a write on its connector thread
+	public final AtomicBoolean writePending;
+	//Set while the client waits for the end of tick flush of its connector
+	final AtomicBoolean flushPending;
+	//Checked for every inbound frame before it is decoded
+	public final MISRateLimiter rateLimiter;
+	//Broadcast frames waiting for outbound bandwidth, used by the server loop
+	public final MISBandwidthBudget budget;
+	//System.nanoTime of the last inbound data
+	public volatile long lastActivityNanos;
+	//Position in a MISTimeoutWheel, only touched by the thread advancing it
+	MISClient timeoutNext;
+	MISClient timeoutPrev;
+	long timeoutDeadline;
+	int timeoutLevel;
+	int timeoutSlot = -1;
+
+	public MISClient(MISConnector connector, SocketAddress address){
+		this.id = idCounter.incrementAndGet();
+		this.connector = connector;
+		this.address = address;
+		outbound = new MISOutboundQueue(connector.getOutboundCapacity());
+		reliableOutbound = new MISOutboundQueue(connector.getOutboundCapacity());
+		writePending = new AtomicBoolean();
+		flushPending = new AtomicBoolean();
+		rateLimiter = new MISRateLimiter(connector.getMessageRate());
+		budget = new MISBandwidthBudget();
+		lastActivityNanos = System.nanoTime();
+	}
+
+	/**
+	 * Marks the client as active, which pushes back its idle timeout
+	 * @param nowNanos
+	 */
+	public void touch(long nowNanos){
+		lastActivityNanos = nowNanos;
+	}
+
+	/**
+	 * Queues a frame for writing, applying the overflow policy of the connector when the queue is full.
+	 * Under DROP_SUPERSEDED a frame whose source has a frame queued is written in its place instead.
+	 * Reliable frames go to their own queue and are never evicted or replaced, when it is full
+	 * the new reliable frame is dropped, or the client under DISCONNECT.
+	 * @param frame owned by the queue from here on, released when it cannot be queued
+	 * @return false when the frame was dropped
+	 */
+	public boolean queue(MISPooledBuffer frame){
+		MISOverflowPolicy policy = connector.getOverflowPolicy();
+		if(frame.reliable){
+			if(reliableOutbound.offer(frame)){
+				return isOpen();
+			}
+			frame.release();
+			connector.droppedFrames.incrementAndGet();
+			if(policy == MISOverflowPolicy.DISCONNECT){
+				connector.drop(this);
+			}
+			return false;
+		}
+		boolean replaceable = policy == MISOverflowPolicy.DROP_SUPERSEDED && frame.source != null;
+		if(replaceable){
+			if(newest == null){
+				synchronized(this){
+					if(newest == null){
+						newest = new ConcurrentHashMap<Object, MISPooledBuffer>();
+					}
+				}
+			}
+			//Takes the place of the queued frame, so it needs no slot of its own, even when the queue is full
+			MISPooledBuffer queued = newest.get(frame.source);
+			if(queued != null && queued.replaceWith(frame)){
+				connector.droppedFrames.incrementAndGet();
+				return isOpen();
+			}
+			//Listed before it is queued, so the writer can not take it before
+			newest.put(frame.source, frame);
+		}
+		while(!outbound.offer(frame)){
+			if(policy == MISOverflowPolicy.DROP_OLDEST){
+				MISPooledBuffer oldest = outbound.poll();
+				if(oldest != null){
+					take(oldest).release();
+					connector.droppedFrames.incrementAndGet();
+				}
+			} else {
+				if(replaceable){
+					newest.remove(frame.source, frame);
+				}
+				//Frames of the same source may have replaced it meanwhile
+				frame.take().release();
+				connector.droppedFrames.incrementAndGet();
+				if(policy == MISOverflowPolicy.DISCONNECT){
+					connector.drop(this);
+				}
+				return false;
+			}
+		}
+		return isOpen();
+	}
+
+	/**
+	 * Checked after queueing a frame. Once the client is closed the writer takes no more
+	 * frames, whatever is still queued is released here.
+	 * @return false when the client is closed
+	 */
+	private boolean isOpen(){
+		if(!closed){
+			return true;
+		}
+		MISPooledBuffer frame;
+		while((frame = reliableOutbound.poll()) != null){
+			frame.release();
+		}
+		while((frame = outbound.poll()) != null){
+			take(frame).release();
+		}
+		return false;
+	}
+
+	/**
+	 * The frame to write next, called by the writing thread
+	 * @return the partly written frame or the next queued one, null when there is nothing to write
+	 */
+	public MISPooledBuffer nextOutbound(){
+		if(writing == null){
+			writing = takeOutbound();
+		}
+		return writing;
+	}
+
+	/**
+	 * The unreliable frame to write next, called by the writing thread of connectors
+	 * that take reliable frames through takeReliable
+	 * @return the partly written frame or the next queued one, null when there is nothing to write
+	 */
+	public MISPooledBuffer nextUnreliable(){
+		if(writing == null){
+			writing = takeUnreliable();
+		}
+		return writing;
+	}
+
+	/**
+	 * Takes the next queued frame for the writing thread, which releases it once written.
+	 * Reliable frames go first, also before unreliable frames queued after them, like
+	 * the packets using symbols sent on the reliable queue.
+	 * @return the frame or null when both queues are empty
+	 */
+	public MISPooledBuffer takeOutbound(){
+		MISPooledBuffer frame = reliableOutbound.poll();
+		if(frame != null){
+			return frame;
+		}
+		frame = takeUnreliable();
+		if(frame != null){
+			//Reliable frames queued before it are visible by now
+			MISPooledBuffer reliable = reliableOutbound.poll();
+			if(reliable != null){
+				held = frame;
+				return reliable;
+			}
+		}
+		return frame;
+	}
+
+	/**
+	 * Takes the next queued reliable frame for the writing thread, which releases it once written
+	 * @return the frame or null when the reliable queue is empty
+	 */
+	public MISPooledBuffer takeReliable(){
+		return reliableOutbound.poll();
+	}
+
+	/**
+	 * Takes the next queued unreliable frame for the writing thread, which releases it once written
+	 * @return the frame or null when the queue is empty
+	 */
+	public MISPooledBuffer takeUnreliable(){
+		MISPooledBuffer frame = held;
+		if(frame != null){
+			held = null;
+			return frame;
+		}
+		frame = outbound.poll();
+		return frame != null ? take(frame) : null;
+	}
+
+	/**
+	 * @return frames waiting in both queues
+	 */
+	public int outboundDepth(){
+		return outbound.size() + reliableOutbound.size();
+	}
+
+	/**
+	 * @param frame polled from the queue
+	 * @return the frame or the newest one written in its place
+	 */
+	private MISPooledBuffer take(MISPooledBuffer frame){
+		MISPooledBuffer taken = frame.take();
+		//Later frames of the source are queued normally again
+		if(frame.source != null && newest != null){
+			newest.remove(frame.source, frame);
+		}
+		return taken;
+	}
+
+	/**
+	 * Releases the frame returned by nextOutbound or nextUnreliable once it is written
+	 */
+	public void finishOutbound(){
+		writing.release();
+		writing = null;
+	}
+
+	/**
+	 * Releases every frame still waiting to be written, used when the client goes away
+	 */
+	public void releaseOutbound(){
+		//Set before draining, a producer queueing meanwhile either sees it or is drained here
+		closed = true;
+		while(nextOutbound() != null){
+			finishOutbound();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Client#"+id+" "+address;
+	}
+
+}
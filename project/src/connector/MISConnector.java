@@ -1,20 +1,391 @@
 package connector;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
 import data_types.MISPackage;
+import data_types.MISPort;
+import data_types.MISPosition;
+import data_types.MISSymbolTable;
+import enums.MISOverflowPolicy;
+import enums.MISProtocol;
+import project.MISProject;
+import settings.MISGeneralSettings;
+import tcp.MISTCP;
+import udp.MISReliableChannel;
+import udp.MISUDP;
 
 public abstract class MISConnector {
 
 	protected int port;
-	
+	protected MISPacketHandler handler;
+	protected ConcurrentHashMap<Integer, MISClient> clients;
+	//Inbound messages allowed per client per second, 0 for no limit
+	protected int messageRate;
+	//Outbound broadcast bytes per client per second, 0 for no limit
+	protected int byteRate;
+	//Frames each client may have queued and what happens beyond that
+	protected int outboundCapacity = MISGeneralSettings.STANDARD_OUTBOUND_QUEUE_SIZE;
+	protected MISOverflowPolicy overflowPolicy = MISGeneralSettings.STANDARD_OVERFLOW_POLICY;
+	//Outbound frames thrown away by the overflow policy
+	final AtomicLong droppedFrames = new AtomicLong();
+	//Whether queued frames wait for flush() instead of being written right away
+	protected volatile boolean coalescing;
+	private final ConcurrentLinkedQueue<MISClient> dirty;
+	//Clients gone since the last packBudgets, their waiting frames are released there
+	private final ConcurrentLinkedQueue<MISClient> departed;
+
 	public MISConnector(int port){
 		this.port = port;
+		clients = new ConcurrentHashMap<Integer, MISClient>();
+		departed = new ConcurrentLinkedQueue<MISClient>();
+		dirty = new ConcurrentLinkedQueue<MISClient>();
 	}
-	
+
 	public abstract boolean start();
 	public abstract boolean stop();
+	/**
+	 * Drops every client connected through this connector
+	 * @return true or false
+	 */
 	public abstract boolean drop();
-	public abstract boolean sendPacket(MISPackage packet);
+	public abstract boolean drop(MISClient client);
+	/**
+	 * Queues an encoded frame for the client. The connector owns the frame from here on
+	 * and releases it once it is written or cannot be sent.
+	 * @param client
+	 * @param frame
+	 * @return true or false
+	 */
+	protected abstract boolean enqueue(MISClient client, MISPooledBuffer frame);
+	/**
+	 * Hands the client to its connector thread to write its queued frames
+	 * @param client
+	 */
+	protected abstract void scheduleWrite(MISClient client);
+
+	/**
+	 * Called by enqueue after a frame was queued. Writes right away, or when coalescing
+	 * remembers the client for the next flush so all its frames of a tick go out together.
+	 * @param client
+	 */
+	protected void queued(MISClient client){
+		if(!coalescing){
+			scheduleWrite(client);
+		} else if(client.flushPending.compareAndSet(false, true)){
+			dirty.add(client);
+		}
+	}
+
+	/**
+	 * Writes the frames queued since the last flush, called by the server loop at the end of every tick
+	 * @return number of clients flushed
+	 */
+	public int flush(){
+		int flushed = 0;
+		MISClient client;
+		while((client = dirty.poll()) != null){
+			client.flushPending.set(false);
+			scheduleWrite(client);
+			flushed++;
+		}
+		return flushed;
+	}
+
+	public boolean isCoalescing(){
+		return coalescing;
+	}
+
+	/**
+	 * @param coalescing true to hold queued frames until flush()
+	 */
+	public void setCoalescing(boolean coalescing){
+		this.coalescing = coalescing;
+		if(!coalescing){
+			flush();
+		}
+	}
+
+	/**
+	 * Sends the packet to its receiver, or to every connected client when no receiver is set
+	 * @param packet
+	 * @return true or false
+	 */
+	public boolean sendPacket(MISPackage packet){
+		if(packet.receiver != null){
+			if(!sendSymbols(packet.receiver)){
+				return false;
+			}
+			MISPooledBuffer frame = MISPackageCodec.encodePooled(packet);
+			frame.reliable = packet.reliable;
+			return packet.receiver.connector.enqueue(packet.receiver, frame);
+		}
+		return broadcast(clients.values(), packet) > 0;
+	}
+
+	/**
+	 * Encodes the packet once and gives every receiver a reference counted slice of it.
+	 * The receivers may belong to different connectors.
+	 * @param receivers
+	 * @param packet
+	 * @return number of clients the packet was queued for
+	 */
+	public static int broadcast(Iterable<? extends MISClient> receivers, MISPackage packet){
+		MISPooledBuffer frame = MISPackageCodec.encodePooled(packet);
+		int sent = 0;
+		for(MISClient client : receivers){
+			if(!sendSymbols(client)){
+				continue;
+			}
+			MISPooledBuffer slice = frame.retainedSlice();
+			slice.reliable = packet.reliable;
+			if(client.connector.enqueue(client, slice)){
+				sent++;
+			}
+		}
+		frame.release();
+		return sent;
+	}
+
+	/**
+	 * Like broadcast, but receivers on a connector with a byte rate get the frame through
+	 * their MISBandwidthBudget, where it waits for the next packBudgets of the server loop
+	 * @param receivers
+	 * @param packet
+	 * @param source replaces the waiting frame of the same source
+	 * @param weight priority gained per tick of waiting
+	 * @param origin scales the priority by distance to the clients view, may be null
+	 * @return number of clients the packet was queued or offered to
+	 */
+	public static int broadcast(Iterable<? extends MISClient> receivers, MISPackage packet, Object source, float weight, MISPosition origin){
+		return broadcast(receivers, packet, source, weight, origin, null);
+	}
+
+	/**
+	 * Like broadcast with a source, also collecting the clients the packet was queued or offered to
+	 * @param receivers
+	 * @param packet
+	 * @param source
+	 * @param weight
+	 * @param origin
+	 * @param reached gets every client the packet did not fail for, may be null. Frames offered to a budget
+	 * count, when one is dropped later a source implementing MISDropListener is told.
+	 * @return number of clients the packet was queued or offered to
+	 */
+	public static int broadcast(Iterable<? extends MISClient> receivers, MISPackage packet, Object source, float weight, MISPosition origin,
+			Collection<MISClient> reached){
+		MISPooledBuffer frame = MISPackageCodec.encodePooled(packet);
+		int sent = 0;
+		for(MISClient client : receivers){
+			if(!sendSymbols(client)){
+				continue;
+			}
+			MISPooledBuffer slice = frame.retainedSlice();
+			slice.source = source;
+			slice.reliable = packet.reliable;
+			if(client.connector.byteRate > 0){
+				if(!client.budget.offer(source, slice, weight, origin)){
+					continue;
+				}
+			} else if(!client.connector.enqueue(client, slice)){
+				continue;
+			}
+			if(reached != null){
+				reached.add(client);
+			}
+			sent++;
+		}
+		frame.release();
+		return sent;
+	}
+
+	/**
+	 * Queues the symbol table keys the client does not know yet, split into packets that
+	 * fit a datagram. Called before every packet to the client, so the ids of a packet
+	 * are always queued ahead of it.
+	 * @param client
+	 * @return false when a packet could not be queued, its keys are sent again next time
+	 */
+	public static boolean sendSymbols(MISClient client){
+		MISSymbolTable table = MISSymbolTable.SYMBOLS;
+		if(client.knownSymbols >= table.size()){
+			return true;
+		}
+		synchronized(client.symbolLock){
+			int toId = table.size();
+			while(client.knownSymbols < toId){
+				int fromId = client.knownSymbols;
+				int end = MISPackageCodec.symbolsEnd(table, fromId, toId, MISReliableChannel.MAX_FRAME_SIZE);
+				MISPooledBuffer frame = MISPackageCodec.encodePooled(MISPackageCodec.encodeSymbols(table, fromId, end));
+				frame.reliable = true;
+				if(!client.connector.enqueue(client, frame)){
+					return false;
+				}
+				client.knownSymbols = end;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Queues the highest priority waiting frames of every client within its budget for one tick.
+	 * Called by the server loop at the end of every tick.
+	 * @param tickNanos length of a tick
+	 * @return number of frames queued
+	 */
+	public int packBudgets(long tickNanos){
+		MISClient gone;
+		while((gone = departed.poll()) != null){
+			gone.budget.release();
+		}
+		if(byteRate <= 0){
+			return 0;
+		}
+		long bytesPerTick = Math.max(1L, byteRate * tickNanos / 1000000000L);
+		int sent = 0;
+		for(MISClient client : clients.values()){
+			sent += client.budget.pack(client, bytesPerTick);
+		}
+		return sent;
+	}
 	public int getPort(){
 		return port;
-	}	
-}
\ No newline at end of file
+	}
+
+	public void setPacketHandler(MISPacketHandler handler){
+		this.handler = handler;
+	}
+
+	public int getMessageRate(){
+		return messageRate;
+	}
+
+	/**
+	 * Limits the inbound messages of clients connecting from now on
+	 * @param messagesPerSecond 0 for no limit
+	 */
+	public void setMessageRate(int messagesPerSecond){
+		messageRate = messagesPerSecond;
+	}
+
+	public int getByteRate(){
+		return byteRate;
+	}
+
+	/**
+	 * Limits the broadcast bytes sent to each client, see MISBandwidthBudget
+	 * @param bytesPerSecond 0 for no limit
+	 */
+	public void setByteRate(int bytesPerSecond){
+		byteRate = bytesPerSecond;
+	}
+
+	public int getOutboundCapacity(){
+		return outboundCapacity;
+	}
+
+	/**
+	 * @param frames outbound queue size of clients connecting from now on
+	 */
+	public void setOutboundCapacity(int frames){
+		outboundCapacity = frames;
+	}
+
+	public MISOverflowPolicy getOverflowPolicy(){
+		return overflowPolicy;
+	}
+
+	public void setOverflowPolicy(MISOverflowPolicy policy){
+		overflowPolicy = policy;
+	}
+
+	/**
+	 * @return frames queued for all clients together
+	 */
+	public long getOutboundDepth(){
+		long depth = 0;
+		for(MISClient client : clients.values()){
+			depth += client.outboundDepth();
+		}
+		return depth;
+	}
+
+	/**
+	 * @return frames queued for the client with the longest queue
+	 */
+	public int getMaxOutboundDepth(){
+		int max = 0;
+		for(MISClient client : clients.values()){
+			max = Math.max(max, client.outboundDepth());
+		}
+		return max;
+	}
+
+	public long getDroppedFrames(){
+		return droppedFrames.get();
+	}
+
+	public MISPacketHandler getPacketHandler(){
+		return handler;
+	}
+
+	/**
+	 * Registers a newly connected client, called by the connector threads
+	 * @param client
+	 */
+	public void clientConnected(MISClient client){
+		clients.put(client.id, client);
+		if(handler != null){
+			handler.clientConnected(client);
+		}
+	}
+
+	/**
+	 * Unregisters a client, the handler is only told once per client
+	 * @param client
+	 */
+	public void clientDisconnected(MISClient client){
+		if(clients.remove(client.id) != null){
+			if(handler != null){
+				handler.clientDisconnected(client);
+			}
+			departed.add(client);
+		}
+	}
+
+	public Collection<MISClient> getClients(){
+		return clients.values();
+	}
+
+	public int getClientCount(){
+		return clients.size();
+	}
+
+	/**
+	 * Creates a connector for every port of the project
+	 * @param project
+	 * @return list of connectors, not yet started
+	 */
+	public static ArrayList<MISConnector> createConnectors(MISProject project){
+		ArrayList<MISConnector> connectors = new ArrayList<MISConnector>();
+		for(MISPort port : project.ports){
+			MISConnector connector = null;
+			if(port.protocol == MISProtocol.TCP){
+				connector = new MISTCP(port.port, project.executionMode);
+			} else if(port.protocol == MISProtocol.UDP){
+				connector = new MISUDP(port.port);
+			}
+			if(connector != null){
+				connector.setMessageRate(project.maxMessagesPerClientPerSecond);
+				connector.setByteRate(project.maxBytesPerClientPerSecond);
+				connector.setOutboundCapacity(project.outboundQueueSize);
+				connector.setOverflowPolicy(project.overflowPolicy);
+				connectors.add(connector);
+			}
+		}
+		return connectors;
+	}
+}
@@ -0,0 +1,15 @@
+package connector;
+
+/**
+ * Source of frames waiting in a MISBandwidthBudget that needs to know when one of
+ * them could not be queued for its client, for example to send the full state next time
+ */
+public interface MISDropListener {
+
+	/**
+	 * Called by the server loop thread
+	 * @param client the frame was dropped for
+	 */
+	public void frameDropped(MISClient client);
+
+}
@@ -0,0 +1,100 @@
+package connector;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock free multi producer multi consumer queue of outbound frames,
+ * an array ring where every cell carries a sequence number (Vyukov's bounded queue).
+ * Producers are the threads sending packets, consumers the writing thread and
+ * producers making room under MISOverflowPolicy.DROP_OLDEST.
+ */
+public class MISOutboundQueue {
+
+	private final AtomicReferenceArray<MISPooledBuffer> frames;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final AtomicLong enqueuePosition;
+	private final AtomicLong dequeuePosition;
+
+	/**
+	 * @param capacity rounded up to a power of two
+	 */
+	public MISOutboundQueue(int capacity){
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		frames = new AtomicReferenceArray<MISPooledBuffer>(size);
+		sequences = new AtomicLongArray(size);
+		for(int i = 0; i < size; i++){
+			sequences.set(i, i);
+		}
+		mask = size - 1;
+		enqueuePosition = new AtomicLong();
+		dequeuePosition = new AtomicLong();
+	}
+
+	/**
+	 * @param frame
+	 * @return false when the queue is full
+	 */
+	public boolean offer(MISPooledBuffer frame){
+		long position = enqueuePosition.get();
+		while(true){
+			int index = (int)(position & mask);
+			long difference = sequences.get(index) - position;
+			if(difference == 0){
+				if(enqueuePosition.compareAndSet(position, position + 1)){
+					frames.lazySet(index, frame);
+					sequences.set(index, position + 1);
+					return true;
+				}
+				position = enqueuePosition.get();
+			} else if(difference < 0){
+				return false;
+			} else {
+				position = enqueuePosition.get();
+			}
+		}
+	}
+
+	/**
+	 * @return the oldest frame or null when the queue is empty
+	 */
+	public MISPooledBuffer poll(){
+		long position = dequeuePosition.get();
+		while(true){
+			int index = (int)(position & mask);
+			long difference = sequences.get(index) - (position + 1);
+			if(difference == 0){
+				if(dequeuePosition.compareAndSet(position, position + 1)){
+					MISPooledBuffer frame = frames.get(index);
+					frames.lazySet(index, null);
+					sequences.set(index, position + mask + 1);
+					return frame;
+				}
+				position = dequeuePosition.get();
+			} else if(difference < 0){
+				return null;
+			} else {
+				position = dequeuePosition.get();
+			}
+		}
+	}
+
+	/**
+	 * @return number of queued frames, may be stale while other threads use the queue
+	 */
+	public int size(){
+		long size = enqueuePosition.get() - dequeuePosition.get();
+		return (int) Math.max(0, Math.min(size, mask + 1));
+	}
+
+	public boolean isEmpty(){
+		return size() == 0;
+	}
+
+	public int capacity(){
+		return mask + 1;
+	}
+
+}
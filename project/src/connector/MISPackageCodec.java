@@ -0,0 +1,426 @@
+package connector;
+
+import java.nio.ByteBuffer;
+
+import data_types.MIS3DPosition;
+import data_types.MISBoolean;
+import data_types.MISInteger;
+import data_types.MISLong;
+import data_types.MISPackage;
+import data_types.MISPosition;
+import data_types.MISString;
+import data_types.MISSymbolTable;
+import data_types.MISVariable;
+
+/**
+ * Binary encoding of MISPackage. A frame looks like
+ * [int32 length][varint type][varint field count][field]...
+ * and every field starts with a one byte tag. Variables carry their key as the varint
+ * id from MISSymbolTable.SYMBOLS, which clients learn from TYPE_SYMBOLS packets.
+ * Ints and longs are zigzag varints and strings are varint length prefixed UTF-8.
+ */
+public class MISPackageCodec {
+
+	public static final byte FIELD_INTEGER = 1;
+	public static final byte FIELD_LONG = 2;
+	public static final byte FIELD_FALSE = 3;
+	public static final byte FIELD_TRUE = 4;
+	public static final byte FIELD_STRING = 5;
+	public static final byte FIELD_POSITION = 6;
+	public static final byte FIELD_3D_POSITION = 7;
+	//Longest key in chars a client may announce
+	public static final int MAX_KEY_LENGTH = 128;
+
+	//Decoding scratch space for strings, one per connector thread
+	private static final ThreadLocal<char[]> charBuffers = new ThreadLocal<char[]>(){
+		@Override
+		protected char[] initialValue() {
+			return new char[256];
+		}
+	};
+
+	/**
+	 * Exact number of bytes encodeFrame writes for the packet, including the length prefix
+	 * @param packet
+	 * @return size in bytes
+	 */
+	public static int frameSize(MISPackage packet){
+		if(packet.data != null){
+			return 4 + packet.data.remaining();
+		}
+		int size = 4 + varIntSize(packet.type) + varIntSize(packet.fields.size());
+		for(Object field : packet.fields){
+			size++;
+			if(field instanceof MISVariable){
+				size += varIntSize(((MISVariable) field).getKeyId());
+			}
+			if(field instanceof MISInteger){
+				size += varIntSize(zigzag(((MISInteger) field).getValue()));
+			} else if(field instanceof MISLong){
+				size += varLongSize(zigzag(((MISLong) field).getValue()));
+			} else if(field instanceof MISString){
+				size += stringSize(((MISString) field).getValue());
+			} else if(field instanceof MISPosition){
+				MISPosition position = (MISPosition) field;
+				size += varIntSize(zigzag(position.x)) + varIntSize(zigzag(position.y));
+				if(field instanceof MIS3DPosition){
+					size += varIntSize(zigzag(((MIS3DPosition) field).z));
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Allocates a buffer of the exact size and encodes the packet into it
+	 * @param packet
+	 * @return the flipped frame
+	 */
+	public static ByteBuffer encodeFrame(MISPackage packet){
+		ByteBuffer frame = ByteBuffer.allocate(frameSize(packet));
+		encodeFrame(packet, frame);
+		frame.flip();
+		return frame;
+	}
+
+	/**
+	 * Encodes the packet into a buffer borrowed from MISBufferPool.POOL
+	 * @param packet
+	 * @return the flipped frame, to be released by the caller
+	 */
+	public static MISPooledBuffer encodePooled(MISPackage packet){
+		int size = frameSize(packet);
+		MISPooledBuffer frame = MISBufferPool.POOL.acquire(size);
+		encodeFrame(packet, frame.buffer);
+		frame.buffer.flip();
+		return frame;
+	}
+
+	/**
+	 * Writes the packet as a length prefixed frame at the buffers position
+	 * @param packet
+	 * @param out must have frameSize(packet) bytes remaining
+	 */
+	public static void encodeFrame(MISPackage packet, ByteBuffer out){
+		int start = out.position();
+		out.putInt(0);
+		if(packet.data != null){
+			out.put(packet.data.duplicate());
+		} else {
+			writeVarInt(out, packet.type);
+			writeVarInt(out, packet.fields.size());
+			for(Object field : packet.fields){
+				writeField(out, field);
+			}
+		}
+		out.putInt(start, out.position() - start - 4);
+	}
+
+	private static void writeField(ByteBuffer out, Object field){
+		if(field instanceof MISInteger){
+			out.put(FIELD_INTEGER);
+			writeVarInt(out, ((MISInteger) field).getKeyId());
+			writeVarInt(out, zigzag(((MISInteger) field).getValue()));
+		} else if(field instanceof MISLong){
+			out.put(FIELD_LONG);
+			writeVarInt(out, ((MISLong) field).getKeyId());
+			writeVarLong(out, zigzag(((MISLong) field).getValue()));
+		} else if(field instanceof MISBoolean){
+			out.put(((MISBoolean) field).getValue() ? FIELD_TRUE : FIELD_FALSE);
+			writeVarInt(out, ((MISBoolean) field).getKeyId());
+		} else if(field instanceof MISString){
+			out.put(FIELD_STRING);
+			writeVarInt(out, ((MISString) field).getKeyId());
+			writeString(out, ((MISString) field).getValue());
+		} else if(field instanceof MIS3DPosition){
+			MIS3DPosition position = (MIS3DPosition) field;
+			out.put(FIELD_3D_POSITION);
+			writeVarInt(out, zigzag(position.x));
+			writeVarInt(out, zigzag(position.y));
+			writeVarInt(out, zigzag(position.z));
+		} else if(field instanceof MISPosition){
+			MISPosition position = (MISPosition) field;
+			out.put(FIELD_POSITION);
+			writeVarInt(out, zigzag(position.x));
+			writeVarInt(out, zigzag(position.y));
+		} else {
+			throw new IllegalArgumentException("Unsupported field "+field);
+		}
+	}
+
+	/**
+	 * Decodes a frame payload, as passed to MISPacketHandler, into a packet
+	 * @param in positioned at the type, the position is moved past the packet
+	 * @return the packet
+	 */
+	public static MISPackage decode(ByteBuffer in){
+		MISPackage packet = new MISPackage(readVarInt(in));
+		int fieldCount = readVarInt(in);
+		//Decoded variables keep their values themselves, no store is allocated per packet,
+		//and are built from the key ids without looking their names up in the table
+		for(int i = 0; i < fieldCount; i++){
+			byte tag = in.get();
+			switch(tag){
+			case FIELD_INTEGER:
+				packet.addVariable(new MISInteger(readVarInt(in), unzigzag(readVarInt(in))));
+				break;
+			case FIELD_LONG:
+				packet.addVariable(new MISLong(readVarInt(in), unzigzag(readVarLong(in))));
+				break;
+			case FIELD_FALSE:
+			case FIELD_TRUE:
+				packet.addVariable(new MISBoolean(readVarInt(in), tag == FIELD_TRUE));
+				break;
+			case FIELD_STRING:
+				int keyId = readVarInt(in);
+				packet.addVariable(new MISString(keyId, readString(in)));
+				break;
+			case FIELD_POSITION:
+				int x = unzigzag(readVarInt(in));
+				packet.addPosition(new MISPosition(x, unzigzag(readVarInt(in))));
+				break;
+			case FIELD_3D_POSITION:
+				int x3 = unzigzag(readVarInt(in));
+				int y3 = unzigzag(readVarInt(in));
+				packet.addPosition(new MIS3DPosition(x3, y3, unzigzag(readVarInt(in))));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown field tag "+tag);
+			}
+		}
+		return packet;
+	}
+
+	/**
+	 * Packet telling a client the keys of the symbol table from an id on,
+	 * the payload is [varint TYPE_SYMBOLS][varint first id][varint count][string]...
+	 * @param table
+	 * @param fromId first id to send
+	 * @param toId id after the last one to send, at most table.size()
+	 * @return the packet, with its payload already encoded
+	 */
+	public static MISPackage encodeSymbols(MISSymbolTable table, int fromId, int toId){
+		int size = varIntSize(MISPackage.TYPE_SYMBOLS) + varIntSize(fromId) + varIntSize(toId - fromId);
+		for(int id = fromId; id < toId; id++){
+			size += stringSize(table.name(id));
+		}
+		ByteBuffer payload = ByteBuffer.allocate(size);
+		writeVarInt(payload, MISPackage.TYPE_SYMBOLS);
+		writeVarInt(payload, fromId);
+		writeVarInt(payload, toId - fromId);
+		for(int id = fromId; id < toId; id++){
+			writeString(payload, table.name(id));
+		}
+		payload.flip();
+		MISPackage packet = new MISPackage(payload);
+		//Ids announced later build on these
+		packet.reliable = true;
+		return packet;
+	}
+
+	/**
+	 * Id after the last key, starting at fromId, that still fits into a TYPE_SYMBOLS frame
+	 * of the given size, but at least fromId + 1 so every call makes progress
+	 * @param table
+	 * @param fromId
+	 * @param toId at most table.size()
+	 * @param maxFrameSize including the length prefix
+	 * @return the end id for encodeSymbols
+	 */
+	public static int symbolsEnd(MISSymbolTable table, int fromId, int toId, int maxFrameSize){
+		//Room for the prefix and a header with the largest varints
+		int size = 4 + varIntSize(MISPackage.TYPE_SYMBOLS) + varIntSize(fromId) + varIntSize(toId - fromId);
+		int end = fromId;
+		while(end < toId){
+			size += stringSize(table.name(end));
+			if(size > maxFrameSize && end > fromId){
+				break;
+			}
+			end++;
+		}
+		return end;
+	}
+
+	/**
+	 * Interns the keys a client announces in a TYPE_SYMBOLS packet,
+	 * the payload is [varint TYPE_SYMBOLS][varint count][string]...
+	 * Keys longer than MAX_KEY_LENGTH chars, keys beyond maxNew new ones and
+	 * new keys once the table holds maxSize are rejected.
+	 * @param in positioned after the type
+	 * @param table
+	 * @param maxNew number of keys the client may still add
+	 * @param maxSize size of the table beyond which no keys are added
+	 * @return number of keys added to the table
+	 */
+	public static int readSymbols(ByteBuffer in, MISSymbolTable table, int maxNew, int maxSize){
+		int count = readVarInt(in);
+		int added = 0;
+		for(int i = 0; i < count; i++){
+			String key = readString(in);
+			if(key.length() > MAX_KEY_LENGTH || table.lookup(key) >= 0 || added >= maxNew){
+				continue;
+			}
+			if(table.intern(key, maxSize) >= 0){
+				added++;
+			}
+		}
+		return added;
+	}
+
+	/*
+	 * Primitive helpers, shared with the other binary formats
+	 */
+
+	public static int zigzag(int value){
+		return (value << 1) ^ (value >> 31);
+	}
+
+	public static long zigzag(long value){
+		return (value << 1) ^ (value >> 63);
+	}
+
+	public static int unzigzag(int value){
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public static long unzigzag(long value){
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public static int varIntSize(int value){
+		int size = 1;
+		while((value & ~0x7F) != 0){
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	public static int varLongSize(long value){
+		int size = 1;
+		while((value & ~0x7FL) != 0){
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	public static void writeVarInt(ByteBuffer out, int value){
+		while((value & ~0x7F) != 0){
+			out.put((byte)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte) value);
+	}
+
+	public static void writeVarLong(ByteBuffer out, long value){
+		while((value & ~0x7FL) != 0){
+			out.put((byte)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte) value);
+	}
+
+	public static int readVarInt(ByteBuffer in){
+		int value = 0;
+		for(int shift = 0; shift < 35; shift += 7){
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if(b >= 0){
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed varint");
+	}
+
+	public static long readVarLong(ByteBuffer in){
+		long value = 0;
+		for(int shift = 0; shift < 70; shift += 7){
+			byte b = in.get();
+			value |= (long)(b & 0x7F) << shift;
+			if(b >= 0){
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed varint");
+	}
+
+	public static int utf8Length(String value){
+		int length = 0;
+		for(int i = 0; i < value.length(); i++){
+			char c = value.charAt(i);
+			if(c < 0x80){
+				length++;
+			} else if(c < 0x800){
+				length += 2;
+			} else if(Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))){
+				length += 4;
+				i++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	public static int stringSize(String value){
+		int length = utf8Length(value);
+		return varIntSize(length) + length;
+	}
+
+	/**
+	 * Writes the string as varint length prefixed UTF-8, straight from its chars
+	 */
+	public static void writeString(ByteBuffer out, String value){
+		writeVarInt(out, utf8Length(value));
+		for(int i = 0; i < value.length(); i++){
+			char c = value.charAt(i);
+			if(c < 0x80){
+				out.put((byte) c);
+			} else if(c < 0x800){
+				out.put((byte)(0xC0 | (c >> 6)));
+				out.put((byte)(0x80 | (c & 0x3F)));
+			} else if(Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))){
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				out.put((byte)(0xF0 | (codePoint >> 18)));
+				out.put((byte)(0x80 | ((codePoint >> 12) & 0x3F)));
+				out.put((byte)(0x80 | ((codePoint >> 6) & 0x3F)));
+				out.put((byte)(0x80 | (codePoint & 0x3F)));
+			} else {
+				out.put((byte)(0xE0 | (c >> 12)));
+				out.put((byte)(0x80 | ((c >> 6) & 0x3F)));
+				out.put((byte)(0x80 | (c & 0x3F)));
+			}
+		}
+	}
+
+	public static String readString(ByteBuffer in){
+		int length = readVarInt(in);
+		if(length < 0 || length > in.remaining()){
+			throw new IllegalArgumentException("Malformed string length "+length);
+		}
+		char[] chars = charBuffers.get();
+		if(chars.length < length){
+			chars = new char[length];
+			charBuffers.set(chars);
+		}
+		int end = in.position() + length;
+		int count = 0;
+		while(in.position() < end){
+			int b = in.get() & 0xFF;
+			if(b < 0x80){
+				chars[count++] = (char) b;
+			} else if(b < 0xE0){
+				chars[count++] = (char)(((b & 0x1F) << 6) | (in.get() & 0x3F));
+			} else if(b < 0xF0){
+				chars[count++] = (char)(((b & 0x0F) << 12) | ((in.get() & 0x3F) << 6) | (in.get() & 0x3F));
+			} else {
+				int codePoint = ((b & 0x07) << 18) | ((in.get() & 0x3F) << 12) | ((in.get() & 0x3F) << 6) | (in.get() & 0x3F);
+				chars[count++] = Character.highSurrogate(codePoint);
+				chars[count++] = Character.lowSurrogate(codePoint);
+			}
+		}
+		return new String(chars, 0, count);
+	}
+
+}
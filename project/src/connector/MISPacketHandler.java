@@ -0,0 +1,17 @@
+package connector;
+
+import java.nio.ByteBuffer;
+
+public interface MISPacketHandler {
+
+	public void clientConnected(MISClient client);
+	/**
+	 * Called on the connector thread for every received frame.
+	 * The buffer is only valid until the method returns.
+	 * @param client
+	 * @param data the frame payload, without the length prefix
+	 */
+	public void packetReceived(MISClient client, ByteBuffer data);
+	public void clientDisconnected(MISClient client);
+
+}
@@ -0,0 +1,133 @@
+package connector;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A direct ByteBuffer borrowed from a MISBufferPool.
+ * It has to be given back with release() once it is no longer used.
+ * Slices share the bytes of their parent and keep it alive until they are released.
+ */
+public class MISPooledBuffer {
+
+	private static final AtomicIntegerFieldUpdater<MISPooledBuffer> refCntUpdater =
+			AtomicIntegerFieldUpdater.newUpdater(MISPooledBuffer.class, "refCnt");
+	private static final AtomicReferenceFieldUpdater<MISPooledBuffer, MISPooledBuffer> replacementUpdater =
+			AtomicReferenceFieldUpdater.newUpdater(MISPooledBuffer.class, MISPooledBuffer.class, "replacement");
+
+	public final ByteBuffer buffer;
+	final MISBufferPool pool;
+	//The buffer a slice was taken from, null for buffers owned by the pool
+	final MISPooledBuffer parent;
+	//Index into MISBufferPool.SIZE_CLASSES, -1 for oversized buffers which are not pooled
+	final int sizeClass;
+	MISBufferPool.LeakTracker tracker;
+	private volatile int refCnt;
+	//The broadcast a frame belongs to, frames of the same source supersede each other
+	public Object source;
+	//Sent on the reliable channel of connectors that have one
+	public boolean reliable;
+	//While queued a newer frame of the same source written in place of this one, null for none.
+	//The buffer itself once it was taken out of the queue.
+	private volatile MISPooledBuffer replacement;
+
+	MISPooledBuffer(MISBufferPool pool, int sizeClass, ByteBuffer buffer){
+		this.pool = pool;
+		this.sizeClass = sizeClass;
+		this.buffer = buffer;
+		parent = null;
+	}
+
+	private MISPooledBuffer(MISPooledBuffer parent){
+		this.pool = parent.pool;
+		this.sizeClass = parent.sizeClass;
+		this.parent = parent;
+		buffer = parent.buffer.asReadOnlyBuffer();
+		refCnt = 1;
+	}
+
+	void reset(){
+		buffer.clear();
+		refCnt = 1;
+		source = null;
+		reliable = false;
+		replacement = null;
+	}
+
+	public int capacity(){
+		return buffer.capacity();
+	}
+
+	/**
+	 * Adds a reference, every reference needs its own release()
+	 * @return this
+	 */
+	public MISPooledBuffer retain(){
+		if(refCntUpdater.getAndIncrement(this) <= 0){
+			throw new IllegalStateException("Buffer retained after it was released");
+		}
+		return this;
+	}
+
+	/**
+	 * Read only view of the current position and limit with its own position.
+	 * No bytes are copied, the slice holds a reference on this buffer until it is released.
+	 * @return MISPooledBuffer
+	 */
+	public MISPooledBuffer retainedSlice(){
+		retain();
+		return new MISPooledBuffer(this);
+	}
+
+	/**
+	 * Takes a frame out of an outbound queue, the taker releases the returned frame
+	 * @return this, or the newest frame that replaced it, in which case this is released
+	 */
+	MISPooledBuffer take(){
+		MISPooledBuffer newer = replacementUpdater.getAndSet(this, this);
+		if(newer == null){
+			return this;
+		}
+		release();
+		return newer;
+	}
+
+	/**
+	 * Puts a newer frame of the same source in the place of this queued frame,
+	 * releasing the frame it replaced before, if any
+	 * @param frame not queued itself
+	 * @return false when this was taken already, the frame is left to the caller then
+	 */
+	boolean replaceWith(MISPooledBuffer frame){
+		while(true){
+			MISPooledBuffer current = replacement;
+			if(current == this){
+				return false;
+			}
+			if(replacementUpdater.compareAndSet(this, current, frame)){
+				if(current != null){
+					current.release();
+				}
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Gives the buffer back to its pool, it must not be used afterwards
+	 */
+	public void release(){
+		int count = refCntUpdater.decrementAndGet(this);
+		if(count == 0){
+			if(parent != null){
+				parent.release();
+			} else {
+				pool.recycle(this);
+			}
+		} else if(count < 0){
+			throw new IllegalStateException("Buffer released more often than it was acquired");
+		}
+	}
+
+}
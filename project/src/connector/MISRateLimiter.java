@@ -0,0 +1,70 @@
+package connector;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Token bucket for the inbound messages of one client, kept lock free as a single
+ * theoretical arrival time (the GCRA form of a token bucket). The bucket refills at
+ * messagesPerSecond and holds at most one second worth of messages.
+ */
+public class MISRateLimiter {
+
+	private static final AtomicLongFieldUpdater<MISRateLimiter> arrivalUpdater =
+			AtomicLongFieldUpdater.newUpdater(MISRateLimiter.class, "arrivalNanos");
+	private static final AtomicLongFieldUpdater<MISRateLimiter> droppedUpdater =
+			AtomicLongFieldUpdater.newUpdater(MISRateLimiter.class, "dropped");
+
+	private final long intervalNanos;
+	private final long burstNanos;
+	private volatile long arrivalNanos;
+	//Messages rejected so far
+	public volatile long dropped;
+
+	/**
+	 * @param messagesPerSecond 0 or less means unlimited
+	 */
+	public MISRateLimiter(int messagesPerSecond){
+		if(messagesPerSecond > 0){
+			intervalNanos = 1000000000L / messagesPerSecond;
+			burstNanos = intervalNanos * (messagesPerSecond - 1);
+		} else {
+			intervalNanos = 0;
+			burstNanos = 0;
+		}
+		arrivalNanos = System.nanoTime();
+	}
+
+	/**
+	 * Takes a token if one is available, counts the message as dropped otherwise
+	 * @param nowNanos
+	 * @return true when the message may be handled
+	 */
+	public boolean tryAcquire(long nowNanos){
+		return tryAcquire(nowNanos, 1);
+	}
+
+	/**
+	 * Takes a token for each message if all are available, counts them as dropped otherwise
+	 * @param nowNanos
+	 * @param messages at least 1
+	 * @return true when the messages may be handled
+	 */
+	public boolean tryAcquire(long nowNanos, int messages){
+		if(intervalNanos == 0){
+			return true;
+		}
+		long cost = intervalNanos * messages;
+		while(true){
+			long arrival = arrivalNanos;
+			long base = arrival - nowNanos > 0 ? arrival : nowNanos;
+			if(base - nowNanos + cost - intervalNanos > burstNanos){
+				droppedUpdater.addAndGet(this, messages);
+				return false;
+			}
+			if(arrivalUpdater.compareAndSet(this, arrival, base + cost)){
+				return true;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,162 @@
+package connector;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hierarchical timing wheel dropping clients that have been idle for too long.
+ * Clients are linked into the slot of their deadline, so adding, removing and
+ * expiring them is O(1) and advancing only touches slots that come due.
+ * Inbound traffic only stores a timestamp on the client (MISClient.touch), the
+ * new deadline is picked up when the old slot comes due and the client is moved on.
+ * advance() belongs to one thread, add() and remove() may be called from any thread.
+ */
+public class MISTimeoutWheel {
+
+	public static final int SLOT_BITS = 6;
+	public static final int SLOTS = 1 << SLOT_BITS;
+	public static final int LEVELS = 4;
+	private static final int SLOT_MASK = SLOTS - 1;
+
+	private final long tickNanos;
+	private final long timeoutTicks;
+	private final long startNanos;
+	//First client of every slot list
+	private final MISClient[][] wheels;
+	private final ConcurrentLinkedQueue<MISClient> pendingAdds;
+	private final ConcurrentLinkedQueue<MISClient> pendingRemoves;
+	private long currentTick;
+	private int size;
+
+	/**
+	 * @param timeoutSeconds idle time after which a client expires
+	 * @param tickMillis resolution of the wheel
+	 */
+	public MISTimeoutWheel(int timeoutSeconds, int tickMillis){
+		tickNanos = tickMillis * 1000000L;
+		timeoutTicks = Math.max(1, timeoutSeconds * 1000L / tickMillis);
+		startNanos = System.nanoTime();
+		wheels = new MISClient[LEVELS][SLOTS];
+		pendingAdds = new ConcurrentLinkedQueue<MISClient>();
+		pendingRemoves = new ConcurrentLinkedQueue<MISClient>();
+	}
+
+	public MISTimeoutWheel(int timeoutSeconds){
+		this(timeoutSeconds, 1000);
+	}
+
+	public void add(MISClient client){
+		pendingAdds.add(client);
+	}
+
+	public void remove(MISClient client){
+		pendingRemoves.add(client);
+	}
+
+	/**
+	 * Moves the wheel up to nowNanos and collects the clients that expired
+	 * @param nowNanos
+	 * @param expired receives the expired clients, they are no longer in the wheel
+	 * @return number of expired clients
+	 */
+	public int advance(long nowNanos, ArrayList<MISClient> expired){
+		MISClient client;
+		while((client = pendingAdds.poll()) != null){
+			if(client.timeoutSlot < 0){
+				insert(client, deadline(client));
+				size++;
+			}
+		}
+		while((client = pendingRemoves.poll()) != null){
+			if(client.timeoutSlot >= 0){
+				unlink(client);
+				size--;
+			}
+		}
+		int count = 0;
+		long targetTick = (nowNanos - startNanos) / tickNanos;
+		while(currentTick < targetTick){
+			currentTick++;
+			cascade();
+			int slot = (int)(currentTick & SLOT_MASK);
+			while((client = wheels[0][slot]) != null){
+				unlink(client);
+				long deadline = deadline(client);
+				if(deadline <= currentTick){
+					size--;
+					expired.add(client);
+					count++;
+				} else {
+					insert(client, deadline);
+				}
+			}
+		}
+		return count;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	private long deadline(MISClient client){
+		return (client.lastActivityNanos - startNanos) / tickNanos + timeoutTicks;
+	}
+
+	/**
+	 * Moves the entries of the higher levels down once a lower level has gone round
+	 */
+	private void cascade(){
+		for(int level = 1; level < LEVELS; level++){
+			if(((currentTick >> (SLOT_BITS * (level - 1))) & SLOT_MASK) != 0){
+				return;
+			}
+			int slot = (int)((currentTick >> (SLOT_BITS * level)) & SLOT_MASK);
+			MISClient client;
+			while((client = wheels[level][slot]) != null){
+				unlink(client);
+				insert(client, client.timeoutDeadline);
+			}
+		}
+	}
+
+	private void insert(MISClient client, long deadline){
+		if(deadline <= currentTick){
+			deadline = currentTick + 1;
+		}
+		client.timeoutDeadline = deadline;
+		long delta = deadline - currentTick;
+		int level = 0;
+		while(level < LEVELS - 1 && delta >= (1L << (SLOT_BITS * (level + 1)))){
+			level++;
+		}
+		if(level == LEVELS - 1 && delta >= (1L << (SLOT_BITS * LEVELS))){
+			//Beyond the wheel, it is looked at again once the top level goes round
+			deadline = currentTick + (1L << (SLOT_BITS * LEVELS)) - 1;
+		}
+		int slot = (int)((deadline >> (SLOT_BITS * level)) & SLOT_MASK);
+		MISClient first = wheels[level][slot];
+		client.timeoutLevel = level;
+		client.timeoutSlot = slot;
+		client.timeoutPrev = null;
+		client.timeoutNext = first;
+		if(first != null){
+			first.timeoutPrev = client;
+		}
+		wheels[level][slot] = client;
+	}
+
+	private void unlink(MISClient client){
+		if(client.timeoutPrev != null){
+			client.timeoutPrev.timeoutNext = client.timeoutNext;
+		} else {
+			wheels[client.timeoutLevel][client.timeoutSlot] = client.timeoutNext;
+		}
+		if(client.timeoutNext != null){
+			client.timeoutNext.timeoutPrev = client.timeoutPrev;
+		}
+		client.timeoutNext = null;
+		client.timeoutPrev = null;
+		client.timeoutSlot = -1;
+	}
+
+}
@@ -2,15 +2,72 @@ package data_types;
 
 public class MISBoolean extends MISVariable{
 
-	protected boolean value;
-	
+	//The value while the variable is in no store
+	private boolean value;
+
+	/**
+	 * A variable holding its own value until a scene moves it into its store
+	 */
 	public MISBoolean(String key, boolean value) {
 		super(key);
 		this.value = value;
 	}
 	
+	/**
+	 * A variable holding its own value, with a key id from the symbol table
+	 */
+	public MISBoolean(int keyId, boolean value) {
+		super(keyId);
+		this.value = value;
+	}
+	
+	/**
+	 * Allocates a new slot for the value in the store
+	 */
+	public MISBoolean(MISVariableStore store, String key, boolean value) {
+		super(key);
+		this.store = store;
+		this.slot = store.allocateBoolean(value);
+	}
+	
+	/**
+	 * View on a slot that is already allocated
+	 */
+	public MISBoolean(MISVariableStore store, int slot, String key) {
+		super(key);
+		this.store = store;
+		this.slot = slot;
+	}
+	
 	public boolean getValue(){
-		return value;
+		return store != null ? store.getBoolean(slot) : value;
+	}
+	
+	public void setValue(boolean value){
+		changing();
+		if(store != null){
+			store.setBoolean(slot, value);
+		} else {
+			this.value = value;
+		}
+		changed();
+	}
+	
+	@Override
+	void attach(MISVariableStore store){
+		if(this.store == null){
+			slot = store.allocateBoolean(value);
+			this.store = store;
+		}
+	}
+	
+	@Override
+	public void free() {
+		if(store != null){
+			value = store.getBoolean(slot);
+			store.freeBoolean(slot);
+			store = null;
+		}
 	}
 
 }
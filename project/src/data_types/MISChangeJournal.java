@@ -0,0 +1,112 @@
+package data_types;
+
+import java.util.Collection;
+
+/**
+ * Ring buffer of the variable changes of a scene, stamped with the tick they happened in.
+ * Answers "what changed since tick N" for delta broadcasts. Every change is an entry,
+ * entries older than the capacity are overwritten and queries reaching them fail,
+ * in which case the caller sends the full state. Not thread safe, used by the server loop.
+ */
+public class MISChangeJournal {
+
+	public static final int STANDARD_CAPACITY = 4096;
+
+	private final MISVariable[] variables;
+	private final long[] versions;
+	private final long[] ticks;
+	private final int mask;
+	//Number of entries ever recorded
+	private long head;
+	private long tick;
+	//Tick of the newest overwritten entry
+	private long evictedTick = -1;
+
+	public MISChangeJournal(){
+		this(STANDARD_CAPACITY);
+	}
+
+	/**
+	 * @param capacity rounded up to a power of two
+	 */
+	public MISChangeJournal(int capacity){
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		variables = new MISVariable[size];
+		versions = new long[size];
+		ticks = new long[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Sets the tick new changes are stamped with, called by the server loop
+	 * @param tick
+	 */
+	public void setTick(long tick){
+		this.tick = tick;
+	}
+
+	public long getTick(){
+		return tick;
+	}
+
+	/**
+	 * Records the current version of the variable
+	 * @param variable
+	 */
+	public void record(MISVariable variable){
+		int index = (int)(head & mask);
+		if(head > mask){
+			evictedTick = ticks[index];
+		}
+		variables[index] = variable;
+		versions[index] = variable.version;
+		ticks[index] = tick;
+		head++;
+	}
+
+	/**
+	 * Clears the entries of a variable removed from the scene, so the journal
+	 * does not keep it alive and later queries skip its changes
+	 * @param variable
+	 */
+	public void forget(MISVariable variable){
+		for(int i = 0; i < variables.length; i++){
+			if(variables[i] == variable){
+				variables[i] = null;
+			}
+		}
+	}
+
+	/**
+	 * Adds every variable changed in tick or later, each once and in the order of its last change
+	 * @param tick
+	 * @param changed
+	 * @return false when the journal no longer reaches back to tick, changed is left untouched
+	 */
+	public boolean changesSince(long tick, Collection<MISVariable> changed){
+		if(tick <= evictedTick){
+			return false;
+		}
+		long oldest = Math.max(0, head - variables.length);
+		long start = head;
+		while(start > oldest && ticks[(int)((start - 1) & mask)] >= tick){
+			start--;
+		}
+		for(long i = start; i < head; i++){
+			int index = (int)(i & mask);
+			//Skip entries of removed variables and entries superseded by a later change of the same variable
+			if(variables[index] != null && versions[index] == variables[index].version){
+				changed.add(variables[index]);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return number of entries currently held
+	 */
+	public int size(){
+		return (int) Math.min(head, variables.length);
+	}
+
+}
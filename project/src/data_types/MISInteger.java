@@ -2,15 +2,72 @@ package data_types;
 
 public class MISInteger extends MISVariable{
 
-	protected int value;
-	
+	//The value while the variable is in no store
+	private int value;
+
+	/**
+	 * A variable holding its own value until a scene moves it into its store
+	 */
 	public MISInteger(String key, int value) {
 		super(key);
 		this.value = value;
 	}
 	
+	/**
+	 * A variable holding its own value, with a key id from the symbol table
+	 */
+	public MISInteger(int keyId, int value) {
+		super(keyId);
+		this.value = value;
+	}
+	
+	/**
+	 * Allocates a new slot for the value in the store
+	 */
+	public MISInteger(MISVariableStore store, String key, int value) {
+		super(key);
+		this.store = store;
+		this.slot = store.allocateInt(value);
+	}
+	
+	/**
+	 * View on a slot that is already allocated
+	 */
+	public MISInteger(MISVariableStore store, int slot, String key) {
+		super(key);
+		this.store = store;
+		this.slot = slot;
+	}
+	
 	public int getValue(){
-		return value;
+		return store != null ? store.getInt(slot) : value;
+	}
+	
+	public void setValue(int value){
+		changing();
+		if(store != null){
+			store.setInt(slot, value);
+		} else {
+			this.value = value;
+		}
+		changed();
+	}
+	
+	@Override
+	void attach(MISVariableStore store){
+		if(this.store == null){
+			slot = store.allocateInt(value);
+			this.store = store;
+		}
+	}
+	
+	@Override
+	public void free() {
+		if(store != null){
+			value = store.getInt(slot);
+			store.freeInt(slot);
+			store = null;
+		}
 	}
 
 }
@@ -1,41 +1,276 @@
 package data_types;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.TreeSet;
 
 import enums.MISListType;
+import helpers.MISIntMap;
 import project.MISProject;
 import settings.MISGeneralSettings;
 
+/**
+ * Variables of a scene, found by the interned key id through a hash index.
+ * ARRAY and LINKED keep the insertion order, SORTED keeps the variables ordered
+ * by value (numbers before strings, ties broken by key) for range and top N queries.
+ * A variable in a SORTED list is repositioned by its setters, a variable belongs to one
+ * SORTED list at most.
+ */
 public class MISList {
 
+	//Numbers by value, then strings by value, then by key
+	private static final Comparator<MISVariable> VALUE_ORDER = new Comparator<MISVariable>() {
+		@Override
+		public int compare(MISVariable a, MISVariable b) {
+			if(a instanceof Bound){
+				return ((Bound) a).compareTo(b);
+			}
+			if(b instanceof Bound){
+				return -((Bound) b).compareTo(a);
+			}
+			boolean aString = a instanceof MISString;
+			boolean bString = b instanceof MISString;
+			if(aString != bString){
+				return aString ? 1 : -1;
+			}
+			int result;
+			if(aString){
+				result = ((MISString) a).getValue().compareTo(((MISString) b).getValue());
+			} else {
+				result = Long.compare(numericValue(a), numericValue(b));
+			}
+			return result != 0 ? result : a.getKey().compareTo(b.getKey());
+		}
+	};
+
+	private MISListType type;
 	private List<MISVariable> list;
-	
+	private TreeSet<MISVariable> sorted;
+	//Read only copy of sorted handed out by getList, null after sorted changed
+	private List<MISVariable> sortedCopy;
+	private MISIntMap<MISVariable> index;
+	//Reused probe for range queries
+	private Bound bound;
+
 	public MISList(){
-		MISListType type = MISProject.project.listType;
+		this(MISProject.project != null ? MISProject.project.listType : MISGeneralSettings.STANDARD_LIST_TYPE);
+	}
+
+	public MISList(MISListType type){
+		this.type = type;
+		index = new MISIntMap<MISVariable>();
 		if(type == MISListType.ARRAY){
 			list = new ArrayList<MISVariable>();
 		} else if(type == MISListType.LINKED){
 			list = new LinkedList<MISVariable>();
+		} else if(type == MISListType.SORTED){
+			sorted = new TreeSet<MISVariable>(VALUE_ORDER);
+			bound = new Bound();
 		}
 	}
-	
+
+	public MISListType getType(){
+		return type;
+	}
+
+	/**
+	 * @return the variables in list order, for SORTED lists a read only copy taken
+	 * again only after a variable was added, removed or changed its value
+	 */
 	public List<MISVariable> getList(){
+		if(sorted != null){
+			if(sortedCopy == null){
+				sortedCopy = Collections.unmodifiableList(new ArrayList<MISVariable>(sorted));
+			}
+			return sortedCopy;
+		}
 		return list;
 	}
-	
+
+	public int size(){
+		return index.size();
+	}
+
 	public MISVariable getVariableFromKey(String key){
-		for(MISVariable var : list){
-			if(var.keyToCompare(key)){
-				return var;
+		return index.get(MISSymbolTable.SYMBOLS.lookup(key));
+	}
+
+	public MISVariable getVariableFromKeyId(int keyId){
+		return index.get(keyId);
+	}
+
+	/**
+	 * Adds the variable unless one with the same key is in the list
+	 * @param variable
+	 * @return true or false
+	 */
+	public boolean addVariableToList(MISVariable variable){
+		if(index.containsKey(variable.getKeyId())){
+			return false;
+		}
+		index.put(variable.getKeyId(), variable);
+		if(sorted != null){
+			if(variable.sortedList != null){
+				throw new IllegalStateException("Variable "+variable.getKey()+" is already in a SORTED list");
 			}
+			variable.sortedList = this;
+			sorted.add(variable);
+			sortedCopy = null;
+		} else {
+			list.add(variable);
 		}
-		return null;
+		return true;
 	}
-	
-	public boolean addVariableToList(String key){
-		return false;
+
+	/**
+	 * Puts the variable in place of the one with the same key, or adds it
+	 * @param variable
+	 */
+	public void replaceVariable(MISVariable variable){
+		removeVariable(variable.getKeyId());
+		addVariableToList(variable);
+	}
+
+	/**
+	 * Changes the value of a numeric variable
+	 * @param key
+	 * @param value
+	 * @return false when there is no numeric variable with the key
+	 */
+	public boolean setNumericValue(String key, long value){
+		MISVariable variable = index.get(MISSymbolTable.SYMBOLS.lookup(key));
+		if(variable == null || variable instanceof MISString){
+			return false;
+		}
+		if(variable instanceof MISInteger){
+			((MISInteger) variable).setValue((int) value);
+		} else if(variable instanceof MISLong){
+			((MISLong) variable).setValue(value);
+		} else if(variable instanceof MISBoolean){
+			((MISBoolean) variable).setValue(value != 0);
+		}
+		return true;
+	}
+
+	public MISVariable removeVariable(String key){
+		return removeVariable(MISSymbolTable.SYMBOLS.lookup(key));
+	}
+
+	public MISVariable removeVariable(int keyId){
+		MISVariable variable = index.remove(keyId);
+		if(variable != null){
+			if(sorted != null){
+				sorted.remove(variable);
+				variable.sortedList = null;
+				sortedCopy = null;
+			} else {
+				list.remove(variable);
+			}
+		}
+		return variable;
+	}
+
+	/**
+	 * Numeric variables with a value between from and to, both included, in ascending order.
+	 * Only available for SORTED lists.
+	 * @param from
+	 * @param to
+	 * @return list of variables
+	 */
+	public List<MISVariable> getRange(long from, long to){
+		requireSorted();
+		ArrayList<MISVariable> result = new ArrayList<MISVariable>();
+		bound.set(from, false);
+		for(MISVariable variable : sorted.tailSet(bound, true)){
+			if(variable instanceof MISString || numericValue(variable) > to){
+				break;
+			}
+			result.add(variable);
+		}
+		return result;
+	}
+
+	/**
+	 * The n numeric variables with the highest values, highest first.
+	 * Only available for SORTED lists.
+	 * @param n
+	 * @return list of variables
+	 */
+	public List<MISVariable> getTopN(int n){
+		requireSorted();
+		ArrayList<MISVariable> result = new ArrayList<MISVariable>();
+		bound.set(0, true);
+		Iterator<MISVariable> iterator = sorted.headSet(bound, false).descendingIterator();
+		while(result.size() < n && iterator.hasNext()){
+			result.add(iterator.next());
+		}
+		return result;
+	}
+
+	/**
+	 * Called by a variable of this list before its value changes
+	 * @param variable
+	 */
+	void unlink(MISVariable variable){
+		sorted.remove(variable);
+		sortedCopy = null;
 	}
 	
+	/**
+	 * Called by a variable of this list after its value changed
+	 * @param variable
+	 */
+	void relink(MISVariable variable){
+		sorted.add(variable);
+		sortedCopy = null;
+	}
+
+	private void requireSorted(){
+		if(sorted == null){
+			throw new IllegalStateException("Range queries need a SORTED list, this list is "+type);
+		}
+	}
+
+	private static long numericValue(MISVariable variable){
+		if(variable instanceof MISInteger){
+			return ((MISInteger) variable).getValue();
+		} else if(variable instanceof MISLong){
+			return ((MISLong) variable).getValue();
+		} else if(variable instanceof MISBoolean){
+			return ((MISBoolean) variable).getValue() ? 1 : 0;
+		}
+		return 0;
+	}
+
+	/**
+	 * Probe sorting right before the numbers with a value, or between the numbers and the strings
+	 */
+	private static class Bound extends MISVariable {
+
+		private long value;
+		private boolean afterNumbers;
+
+		Bound(){
+			super(null, -1);
+		}
+
+		void set(long value, boolean afterNumbers){
+			this.value = value;
+			this.afterNumbers = afterNumbers;
+		}
+
+		int compareTo(MISVariable variable){
+			if(afterNumbers || variable instanceof MISString){
+				return variable instanceof MISString ? -1 : 1;
+			}
+			int result = Long.compare(value, numericValue(variable));
+			return result != 0 ? result : -1;
+		}
+
+	}
+
 }
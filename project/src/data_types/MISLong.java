@@ -2,15 +2,72 @@ package data_types;
 
 public class MISLong extends MISVariable{
 
-	protected Long value;
-	
-	public MISLong(String key, Long value) {
+	//The value while the variable is in no store
+	private long value;
+
+	/**
+	 * A variable holding its own value until a scene moves it into its store
+	 */
+	public MISLong(String key, long value) {
 		super(key);
 		this.value = value;
 	}
 	
-	public Long getValue(){
-		return value;
+	/**
+	 * A variable holding its own value, with a key id from the symbol table
+	 */
+	public MISLong(int keyId, long value) {
+		super(keyId);
+		this.value = value;
+	}
+	
+	/**
+	 * Allocates a new slot for the value in the store
+	 */
+	public MISLong(MISVariableStore store, String key, long value) {
+		super(key);
+		this.store = store;
+		this.slot = store.allocateLong(value);
+	}
+	
+	/**
+	 * View on a slot that is already allocated
+	 */
+	public MISLong(MISVariableStore store, int slot, String key) {
+		super(key);
+		this.store = store;
+		this.slot = slot;
+	}
+	
+	public long getValue(){
+		return store != null ? store.getLong(slot) : value;
+	}
+	
+	public void setValue(long value){
+		changing();
+		if(store != null){
+			store.setLong(slot, value);
+		} else {
+			this.value = value;
+		}
+		changed();
+	}
+	
+	@Override
+	void attach(MISVariableStore store){
+		if(this.store == null){
+			slot = store.allocateLong(value);
+			this.store = store;
+		}
+	}
+	
+	@Override
+	public void free() {
+		if(store != null){
+			value = store.getLong(slot);
+			store.freeLong(slot);
+			store = null;
+		}
 	}
 
 }
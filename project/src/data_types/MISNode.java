@@ -1,5 +1,7 @@
 package data_types;
 
+import java.util.ArrayList;
+
 public class MISNode {
 
 	public String name;
@@ -9,11 +11,27 @@ public class MISNode {
 	public String type;
 	
 	public int index;
+	//Number of the node in its scene, given by MISScene.addNode and never reused, -1 before
+	public int id = -1;
 	
 	public MISNode parent;
+	//Nodes whose parent this is, in the order they were added
+	public final ArrayList<MISNode> children = new ArrayList<MISNode>(0);
+	
+	//Where the node is while the server runs, null when it has no position
+	public MISPosition position;
 	
 	public MISNode(){
 		
 	}
 	
+	/**
+	 * Makes this node the parent of the child
+	 * @param child
+	 */
+	public void addChild(MISNode child){
+		child.parent = this;
+		children.add(child);
+	}
+	
 }
@@ -1,5 +1,63 @@
 package data_types;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import connector.MISClient;
+
 public class MISPackage {
 
+	/*
+	 * Packet types, written as a varint
+	 */
+	public static final int TYPE_RAW = 0;
+	public static final int TYPE_BROADCAST = 1;
+	//Client to server, a MISInteger field with the id of the scene to join
+	public static final int TYPE_JOIN_SCENE = 2;
+	//Server to client the keys of MISSymbolTable.SYMBOLS by id, client to server keys it wants interned
+	public static final int TYPE_SYMBOLS = 3;
+	//Server to client, every variable of a delta broadcast, sent before the deltas in TYPE_BROADCAST
+	public static final int TYPE_STATE = 4;
+	//Server to client, a MISSnapshotBroadcast snapshot diffed against the acknowledged one
+	public static final int TYPE_SNAPSHOT = 5;
+	//Client to server, a MISLong field with the id of the newest snapshot received
+	public static final int TYPE_SNAPSHOT_ACK = 6;
+	//Client to server, a MISPosition or MIS3DPosition field and a MISInteger field with the view radius
+	public static final int TYPE_VIEW = 7;
+
+	//null means every client of the connector
+	public MISClient receiver;
+	public int type;
+	//MISVariable or MISPosition values, in the order they are sent
+	public ArrayList<Object> fields;
+	//Already encoded payload, sent instead of type and fields when set
+	public ByteBuffer data;
+	//Resent until acknowledged and handled in order on connectors that are not reliable by themselves
+	public boolean reliable;
+
+	public MISPackage(int type){
+		this.type = type;
+		fields = new ArrayList<Object>();
+	}
+
+	public MISPackage(ByteBuffer data){
+		this(TYPE_RAW);
+		this.data = data;
+	}
+
+	public MISPackage(MISClient receiver, ByteBuffer data){
+		this(data);
+		this.receiver = receiver;
+	}
+
+	public MISPackage addVariable(MISVariable variable){
+		fields.add(variable);
+		return this;
+	}
+
+	public MISPackage addPosition(MISPosition position){
+		fields.add(position);
+		return this;
+	}
+
 }
@@ -1,9 +1,18 @@
 package data_types;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import connector.MISClient;
+import helpers.MISIntMap;
 import scene.MISBroadcast;
+import scene.MISBroadcastScheduler;
 import scene.MISRule;
+import scene.MISSpatialGrid;
 
 public class MISScene {
 
@@ -15,6 +24,12 @@ public class MISScene {
 	public int loadSteps;
 	public int format;
 	public ArrayList<MISExternalResource> externalResources;
+	//Indexes over the two lists above, kept by the add and remove methods
+	private final HashMap<NodeKey, MISNode> nodeKeys;
+	private final HashMap<ResourceKey, MISExternalResource> resourceKeys;
+	private final MISIntMap<MISExternalResource> resourcesById;
+	//Id the next added node gets
+	private int nextNodeId;
 	
 	//indentification number
 	//an array of nodes
@@ -22,43 +37,177 @@ public class MISScene {
 	//a set of general rules
 	//a list of broadcasts with timer
 	public ArrayList<MISBroadcast> broadcasts;
+	//Fires the broadcasts above at their own interval
+	public MISBroadcastScheduler scheduler;
 	//a successcriteria, which when something happens, do something
 	
+	//Values of the scenes variables, the variables are views on it
+	public MISVariableStore variableStore;
+	//The scenes variables, changes to them are recorded in the journal
+	public MISList variables;
+	public MISChangeJournal journal;
+	
+	//Clients currently in this scene, only known while the server runs
+	public Set<MISClient> clients;
+	//Which clients see which positions, for broadcasts with an origin
+	public MISSpatialGrid grid;
+	
 	public MISScene(int id){
 		this.IDNumber = id;
 		nodeList = new ArrayList<MISNode>();
 		externalResources = new ArrayList<MISExternalResource>();
+		nodeKeys = new HashMap<NodeKey, MISNode>();
+		resourceKeys = new HashMap<ResourceKey, MISExternalResource>();
+		resourcesById = new MISIntMap<MISExternalResource>();
 		broadcasts = new ArrayList<MISBroadcast>();
+		scheduler = new MISBroadcastScheduler();
+		variableStore = new MISVariableStore();
+		variables = new MISList();
+		journal = new MISChangeJournal();
+		clients = Collections.newSetFromMap(new ConcurrentHashMap<MISClient, Boolean>());
+		grid = new MISSpatialGrid();
 	}
 	
-	public void addNode(MISNode node){
-		boolean exists = false;
-		for(MISNode tempNode : nodeList){
-			if(tempNode.name.equals(node.name)){
-				if(tempNode.index == node.index){
-					if(tempNode.type.equals(node.type)){
-						exists = true;
-					}
-				}
-			}
+	/**
+	 * Adds the node unless the scene has one with the same parent, name, index and type,
+	 * so equally named children of different parents are both kept.
+	 * Their parent, name, index and type must not change while they are in the scene.
+	 * A node without id gets the next one.
+	 * @param node
+	 * @return false when the scene has a node with the same parent, name, index and type
+	 */
+	public boolean addNode(MISNode node){
+		NodeKey key = new NodeKey(node);
+		if(nodeKeys.containsKey(key)){
+			return false;
 		}
-		if(!exists){
-			nodeList.add(node);
+		nodeKeys.put(key, node);
+		if(node.id < 0){
+			node.id = nextNodeId;
 		}
+		nextNodeId = Math.max(nextNodeId, node.id + 1);
+		nodeList.add(node);
+		if(node.position != null){
+			grid.move(node);
+		}
+		return true;
 	}
 	
-	public void addExternalResource(MISExternalResource resource){
-		boolean exists = false;
-		for(MISExternalResource extRes : externalResources){
-			if(extRes.path.equals(resource.path)){
-				if(extRes.id == resource.id){
-					exists = true;
+	/**
+	 * @param node
+	 * @return false when the node is not in the scene
+	 */
+	public boolean removeNode(MISNode node){
+		NodeKey key = new NodeKey(node);
+		if(nodeKeys.get(key) != node){
+			return false;
+		}
+		nodeKeys.remove(key);
+		nodeList.remove(node);
+		grid.move(node);
+		return true;
+	}
+	
+	/**
+	 * @param node
+	 * @return true when the node is in the scene
+	 */
+	public boolean containsNode(MISNode node){
+		return nodeKeys.get(new NodeKey(node)) == node;
+	}
+	
+	/**
+	 * Moves a node of the scene, the spatial grid picks the new position up on the next tick
+	 * @param node
+	 * @param position null when the node has no position any more
+	 */
+	public void moveNode(MISNode node, MISPosition position){
+		node.position = position;
+		grid.move(node);
+	}
+	
+	/**
+	 * Adds the resource unless the scene has one with the same path and id.
+	 * Their path and id must not change while they are in the scene.
+	 * @param resource
+	 * @return false when the scene has a resource with the same path and id
+	 */
+	public boolean addExternalResource(MISExternalResource resource){
+		ResourceKey key = new ResourceKey(resource);
+		if(resourceKeys.containsKey(key)){
+			return false;
+		}
+		resourceKeys.put(key, resource);
+		externalResources.add(resource);
+		if(!resourcesById.containsKey(resource.id)){
+			resourcesById.put(resource.id, resource);
+		}
+		return true;
+	}
+	
+	/**
+	 * @param resource
+	 * @return false when the resource is not in the scene
+	 */
+	public boolean removeExternalResource(MISExternalResource resource){
+		ResourceKey key = new ResourceKey(resource);
+		if(resourceKeys.get(key) != resource){
+			return false;
+		}
+		resourceKeys.remove(key);
+		externalResources.remove(resource);
+		if(resourcesById.get(resource.id) == resource){
+			resourcesById.remove(resource.id);
+			//Another resource may use the same id with a different path
+			for(MISExternalResource other : externalResources){
+				if(other.id == resource.id){
+					resourcesById.put(other.id, other);
+					break;
 				}
 			}
 		}
-		if(!exists){
-			externalResources.add(resource);
+		return true;
+	}
+	
+	/**
+	 * @param id
+	 * @return the first added resource with the id, or null
+	 */
+	public MISExternalResource getExternalResource(int id){
+		return resourcesById.get(id);
+	}
+	
+	/**
+	 * Adds the variable to the scene, its value moves into the variableStore
+	 * and its changes are journaled from now on
+	 * @param variable
+	 * @return false when the scene has a variable with the same key
+	 */
+	public boolean addVariable(MISVariable variable){
+		if(variables.getVariableFromKeyId(variable.getKeyId()) != null){
+			return false;
+		}
+		variable.attach(variableStore);
+		variables.addVariableToList(variable);
+		variable.journal = journal;
+		return true;
+	}
+	
+	/**
+	 * Removes the variable, it keeps its value itself afterwards
+	 * @param key
+	 * @return the removed variable or null
+	 */
+	public MISVariable removeVariable(String key){
+		MISVariable variable = variables.removeVariable(key);
+		if(variable != null){
+			variable.journal = null;
+			journal.forget(variable);
+			if(variable.getStore() == variableStore){
+				variable.free();
+			}
 		}
+		return variable;
 	}
 	
 	public void addRule(){
@@ -67,6 +216,16 @@ public class MISScene {
 	
 	public void addBroadcast(MISBroadcast broadcast){
 		broadcasts.add(broadcast);
+		scheduler.schedule(broadcast);
+	}
+	
+	/**
+	 * Sends the broadcast to every client in the scene
+	 * @param broadcast
+	 * @return number of clients it was queued for
+	 */
+	public int sendBroadcast(MISBroadcast broadcast){
+		return broadcast.send(this);
 	}
 	
 	public void addSuccessCriteria(){
@@ -78,4 +237,67 @@ public class MISScene {
 	}
 	
 	
+	/**
+	 * Parent, name, index and type of a node, the duplicate check of addNode
+	 */
+	private static class NodeKey {
+		
+		//Compared by identity
+		final MISNode parent;
+		final String name;
+		final int index;
+		final String type;
+		
+		NodeKey(MISNode node){
+			parent = node.parent;
+			name = node.name;
+			index = node.index;
+			type = node.type;
+		}
+		
+		@Override
+		public boolean equals(Object object){
+			if(!(object instanceof NodeKey)){
+				return false;
+			}
+			NodeKey other = (NodeKey) object;
+			return parent == other.parent && index == other.index && Objects.equals(name, other.name) && Objects.equals(type, other.type);
+		}
+		
+		@Override
+		public int hashCode(){
+			return ((System.identityHashCode(parent) * 31 + Objects.hashCode(name)) * 31 + index) * 31 + Objects.hashCode(type);
+		}
+		
+	}
+	
+	/**
+	 * Path and id of an external resource, the duplicate check of addExternalResource
+	 */
+	private static class ResourceKey {
+		
+		final String path;
+		final int id;
+		
+		ResourceKey(MISExternalResource resource){
+			path = resource.path;
+			id = resource.id;
+		}
+		
+		@Override
+		public boolean equals(Object object){
+			if(!(object instanceof ResourceKey)){
+				return false;
+			}
+			ResourceKey other = (ResourceKey) object;
+			return id == other.id && Objects.equals(path, other.path);
+		}
+		
+		@Override
+		public int hashCode(){
+			return Objects.hashCode(path) * 31 + id;
+		}
+		
+	}
+	
 }
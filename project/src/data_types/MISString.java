@@ -9,8 +9,23 @@ public class MISString extends MISVariable{
 		this.value = value;
 	}
 	
+	/**
+	 * @param keyId of a key in the symbol table
+	 * @param value
+	 */
+	public MISString(int keyId, String value) {
+		super(keyId);
+		this.value = value;
+	}
+	
 	public String getValue(){
 		return value;
 	}
+	
+	public void setValue(String value){
+		changing();
+		this.value = value;
+		changed();
+	}
 
 }
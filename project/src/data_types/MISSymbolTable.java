@@ -0,0 +1,86 @@
+package data_types;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives every variable key a dense int id. Keys are interned once, when the project
+ * loads or a client announces them, and are compared, hashed and sent as ids afterwards.
+ * Ids are never reused, lookups are lock free and interning new keys is synchronized.
+ */
+public class MISSymbolTable {
+
+	public static final MISSymbolTable SYMBOLS = new MISSymbolTable();
+
+	private final ConcurrentHashMap<String, Integer> ids;
+	private volatile String[] names;
+	private volatile int size;
+
+	public MISSymbolTable(){
+		ids = new ConcurrentHashMap<String, Integer>();
+		names = new String[64];
+	}
+
+	/**
+	 * @param key
+	 * @return the id of the key, a new one when the key was not known
+	 */
+	public int intern(String key){
+		return intern(key, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Interns the key unless it is new and the table is full, used for keys announced by clients
+	 * @param key
+	 * @param maxSize number of keys beyond which no new ones are taken
+	 * @return the id of the key, -1 when it was new and the table holds maxSize keys
+	 */
+	public int intern(String key, int maxSize){
+		Integer id = ids.get(key);
+		if(id != null){
+			return id;
+		}
+		synchronized(this){
+			id = ids.get(key);
+			if(id != null){
+				return id;
+			}
+			int newId = size;
+			if(newId >= maxSize){
+				return -1;
+			}
+			if(newId == names.length){
+				names = Arrays.copyOf(names, newId * 2);
+			}
+			names[newId] = key;
+			size = newId + 1;
+			ids.put(key, newId);
+			return newId;
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return the id of the key or -1 when it was never interned
+	 */
+	public int lookup(String key){
+		Integer id = ids.get(key);
+		return id != null ? id : -1;
+	}
+
+	/**
+	 * @param id
+	 * @return the key or null for unknown ids
+	 */
+	public String name(int id){
+		if(id < 0 || id >= size){
+			return null;
+		}
+		return names[id];
+	}
+
+	public int size(){
+		return size;
+	}
+
+}
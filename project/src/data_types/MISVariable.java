@@ -3,27 +3,112 @@ package data_types;
 public abstract class MISVariable {
 
 	protected String key;
+	//Id of the key in MISSymbolTable.SYMBOLS, used for comparing and sending the key
+	protected int keyId;
+	//Where the value lives, null while the variable keeps its value itself
+	protected MISVariableStore store;
+	protected int slot;
+	//Incremented on every change of the value
+	protected long version;
+	//Journal of the scene the variable belongs to, null while it belongs to none
+	protected MISChangeJournal journal;
+	//SORTED list holding the variable, it is repositioned around every change
+	MISList sortedList;
+	//Node the variable belongs to, delta broadcasts only send it to clients that see the node.
+	//null for variables of the whole scene
+	public MISNode node;
 	
 	public MISVariable(String key){
 		this.key = key;
+		this.keyId = MISSymbolTable.SYMBOLS.intern(key);
+	}
+	
+	/**
+	 * Variable with a key already in the symbol table, as decoded from the wire
+	 * @param keyId
+	 * @throws IllegalArgumentException when the table has no such id
+	 */
+	public MISVariable(int keyId){
+		this.key = MISSymbolTable.SYMBOLS.name(keyId);
+		if(key == null){
+			throw new IllegalArgumentException("Unknown key id "+keyId);
+		}
+		this.keyId = keyId;
+	}
+	
+	/**
+	 * Variable with a key outside of the symbol table, for probes
+	 */
+	MISVariable(String key, int keyId){
+		this.key = key;
+		this.keyId = keyId;
 	}
 	
 	public String getKey(){
 		return key;
 	}
 	
-	public boolean eq(MISVariable comparer){
-		if(key.equals(comparer.getKey())){
-			return true;
+	public int getKeyId(){
+		return keyId;
+	}
+	
+	public MISVariableStore getStore(){
+		return store;
+	}
+	
+	public int getSlot(){
+		return slot;
+	}
+	
+	public long getVersion(){
+		return version;
+	}
+	
+	/**
+	 * Called by the setters before the value is written, takes the variable out of its SORTED list
+	 */
+	protected void changing(){
+		if(sortedList != null){
+			sortedList.unlink(this);
 		}
-		return false;
 	}
 	
-	public boolean keyToCompare(String key){
-		if(this.key.equals(key)){
-			return true;
+	/**
+	 * Called by the setters, bumps the version and records the change in the scene journal
+	 */
+	protected void changed(){
+		if(sortedList != null){
+			sortedList.relink(this);
+		}
+		version++;
+		if(journal != null){
+			journal.record(this);
 		}
-		return false;
+	}
+	
+	/**
+	 * Moves the value into a new slot of the store, nothing happens when it has one already
+	 * @param store
+	 */
+	void attach(MISVariableStore store){
+	}
+	
+	/**
+	 * Gives the value slot back to the store, the variable keeps the value itself afterwards
+	 */
+	public void free(){
+	}
+	
+	public boolean eq(MISVariable comparer){
+		return keyId == comparer.keyId;
+	}
+	
+	public boolean keyToCompare(String key){
+		return keyId == MISSymbolTable.SYMBOLS.lookup(key);
+	}
+	
+	public boolean keyToCompare(int keyId){
+		return this.keyId == keyId;
 	}
 	
 }
@@ -0,0 +1,183 @@
+package data_types;
+
+import java.util.Arrays;
+
+/**
+ * Struct of arrays storage for the values of a scene's variables. Ints, longs and
+ * booleans each live in their own primitive column (booleans packed 64 to a long)
+ * and are addressed by a slot id. MISInteger, MISLong and MISBoolean are views on a slot.
+ * Freed slots are reused, freeing a slot that is already free throws. Not thread safe.
+ */
+public class MISVariableStore {
+
+	private static final int[] NO_INTS = new int[0];
+	private static final long[] NO_LONGS = new long[0];
+
+	private int[] ints;
+	private long[] longs;
+	private long[] booleans;
+	private int intCount;
+	private int longCount;
+	private int booleanCount;
+	private final SlotStack freeInts;
+	private final SlotStack freeLongs;
+	private final SlotStack freeBooleans;
+
+	public MISVariableStore(){
+		ints = NO_INTS;
+		longs = NO_LONGS;
+		booleans = NO_LONGS;
+		freeInts = new SlotStack();
+		freeLongs = new SlotStack();
+		freeBooleans = new SlotStack();
+	}
+
+	/*
+	 * Ints
+	 */
+
+	public int allocateInt(int value){
+		int slot = freeInts.pop();
+		if(slot < 0){
+			slot = intCount++;
+			if(slot == ints.length){
+				ints = Arrays.copyOf(ints, grow(ints.length));
+			}
+		}
+		ints[slot] = value;
+		return slot;
+	}
+
+	public int getInt(int slot){
+		return ints[slot];
+	}
+
+	public void setInt(int slot, int value){
+		ints[slot] = value;
+	}
+
+	public void freeInt(int slot){
+		freeInts.push(slot, intCount);
+	}
+
+	/*
+	 * Longs
+	 */
+
+	public int allocateLong(long value){
+		int slot = freeLongs.pop();
+		if(slot < 0){
+			slot = longCount++;
+			if(slot == longs.length){
+				longs = Arrays.copyOf(longs, grow(longs.length));
+			}
+		}
+		longs[slot] = value;
+		return slot;
+	}
+
+	public long getLong(int slot){
+		return longs[slot];
+	}
+
+	public void setLong(int slot, long value){
+		longs[slot] = value;
+	}
+
+	public void freeLong(int slot){
+		freeLongs.push(slot, longCount);
+	}
+
+	/*
+	 * Booleans
+	 */
+
+	public int allocateBoolean(boolean value){
+		int slot = freeBooleans.pop();
+		if(slot < 0){
+			slot = booleanCount++;
+			if((slot >>> 6) == booleans.length){
+				booleans = Arrays.copyOf(booleans, grow(booleans.length));
+			}
+		}
+		setBoolean(slot, value);
+		return slot;
+	}
+
+	public boolean getBoolean(int slot){
+		return (booleans[slot >>> 6] & (1L << slot)) != 0;
+	}
+
+	public void setBoolean(int slot, boolean value){
+		if(value){
+			booleans[slot >>> 6] |= 1L << slot;
+		} else {
+			booleans[slot >>> 6] &= ~(1L << slot);
+		}
+	}
+
+	public void freeBoolean(int slot){
+		freeBooleans.push(slot, booleanCount);
+	}
+
+	/*
+	 * Slot counts, freed slots included
+	 */
+
+	public int intSlots(){
+		return intCount;
+	}
+
+	public int longSlots(){
+		return longCount;
+	}
+
+	public int booleanSlots(){
+		return booleanCount;
+	}
+
+	private static int grow(int length){
+		return length == 0 ? 1 : length * 2;
+	}
+
+	private static class SlotStack {
+
+		private int[] slots = NO_INTS;
+		private int size;
+		//Bit per slot that is on the stack
+		private long[] free = NO_LONGS;
+
+		/**
+		 * @param slot
+		 * @param count slots allocated so far
+		 * @throws IllegalStateException when the slot was never allocated or is free already
+		 */
+		void push(int slot, int count){
+			if(slot < 0 || slot >= count){
+				throw new IllegalStateException("Slot "+slot+" was never allocated");
+			}
+			if((slot >>> 6) >= free.length){
+				free = Arrays.copyOf(free, Math.max(grow(free.length), (slot >>> 6) + 1));
+			}
+			if((free[slot >>> 6] & (1L << slot)) != 0){
+				throw new IllegalStateException("Slot "+slot+" freed twice");
+			}
+			free[slot >>> 6] |= 1L << slot;
+			if(size == slots.length){
+				slots = Arrays.copyOf(slots, grow(slots.length));
+			}
+			slots[size++] = slot;
+		}
+
+		int pop(){
+			if(size == 0){
+				return -1;
+			}
+			int slot = slots[--size];
+			free[slot >>> 6] &= ~(1L << slot);
+			return slot;
+		}
+
+	}
+
+}
@@ -0,0 +1,10 @@
+package enums;
+
+public enum MISExecutionMode {
+
+	//A few event loops multiplexing every connection
+	SELECTOR,
+	//Blocking reads and writes on a (virtual) thread per client
+	THREAD_PER_CLIENT
+
+}
@@ -0,0 +1,12 @@
+package enums;
+
+public enum MISOverflowPolicy {
+
+	//Throw away the oldest queued frame to make room
+	DROP_OLDEST,
+	//Write new frames in place of the queued frame of the same broadcast, drop other new frames while full
+	DROP_SUPERSEDED,
+	//Drop the client, it cannot keep up
+	DISCONNECT
+
+}
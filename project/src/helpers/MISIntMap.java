@@ -0,0 +1,136 @@
+package helpers;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from int keys to objects, without boxing the keys.
+ * Linear probing, removals shift the following entries back instead of leaving tombstones.
+ * Not thread safe.
+ */
+public class MISIntMap<V> {
+
+	private int[] keys;
+	private Object[] values;
+	private int size;
+	private int mask;
+
+	public MISIntMap(){
+		this(16);
+	}
+
+	public MISIntMap(int expectedSize){
+		int capacity = 16;
+		while(capacity * 3 / 4 < expectedSize){
+			capacity <<= 1;
+		}
+		keys = new int[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key){
+		int index = index(key);
+		while(values[index] != null){
+			if(keys[index] == key){
+				return (V) values[index];
+			}
+			index = (index + 1) & mask;
+		}
+		return null;
+	}
+
+	public boolean containsKey(int key){
+		return get(key) != null;
+	}
+
+	/**
+	 * @param key
+	 * @param value not null
+	 * @return the previous value or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value){
+		if(value == null){
+			throw new IllegalArgumentException("MISIntMap does not hold null values");
+		}
+		int index = index(key);
+		while(values[index] != null){
+			if(keys[index] == key){
+				V previous = (V) values[index];
+				values[index] = value;
+				return previous;
+			}
+			index = (index + 1) & mask;
+		}
+		keys[index] = key;
+		values[index] = value;
+		if(++size > (mask + 1) * 3 / 4){
+			resize();
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(int key){
+		int index = index(key);
+		while(values[index] != null){
+			if(keys[index] == key){
+				V previous = (V) values[index];
+				shiftBack(index);
+				size--;
+				return previous;
+			}
+			index = (index + 1) & mask;
+		}
+		return null;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public void clear(){
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	private void shiftBack(int hole){
+		int index = (hole + 1) & mask;
+		while(values[index] != null){
+			int home = index(keys[index]);
+			//Move the entry into the hole unless its home lies between the hole and itself
+			if(((index - home) & mask) >= ((index - hole) & mask)){
+				keys[hole] = keys[index];
+				values[hole] = values[index];
+				hole = index;
+			}
+			index = (index + 1) & mask;
+		}
+		values[hole] = null;
+	}
+
+	private void resize(){
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new int[oldKeys.length * 2];
+		values = new Object[oldValues.length * 2];
+		mask = keys.length - 1;
+		for(int i = 0; i < oldKeys.length; i++){
+			if(oldValues[i] != null){
+				int index = index(oldKeys[i]);
+				while(values[index] != null){
+					index = (index + 1) & mask;
+				}
+				keys[index] = oldKeys[i];
+				values[index] = oldValues[i];
+			}
+		}
+	}
+
+	private int index(int key){
+		int hash = key * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+}
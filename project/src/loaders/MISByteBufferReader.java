@@ -0,0 +1,83 @@
+package loaders;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader decoding UTF-8 from a ByteBuffer, a chunk at a time as characters are asked for,
+ * so a file read at once is never turned into one large String.
+ */
+public class MISByteBufferReader extends Reader {
+
+	private final ByteBuffer bytes;
+	private final CharsetDecoder decoder;
+	private final CharBuffer chars;
+	private boolean flushed;
+
+	public MISByteBufferReader(ByteBuffer bytes){
+		this.bytes = bytes.slice();
+		decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		chars = CharBuffer.allocate(8192);
+		chars.flip();
+	}
+
+	@Override
+	public int read(char[] out, int offset, int length) throws IOException {
+		if(length == 0){
+			return 0;
+		}
+		if(!chars.hasRemaining() && !decode()){
+			return -1;
+		}
+		int read = Math.min(length, chars.remaining());
+		chars.get(out, offset, read);
+		return read;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if(!chars.hasRemaining() && !decode()){
+			return -1;
+		}
+		return chars.get();
+	}
+
+	@Override
+	public void close() {
+		bytes.position(bytes.limit());
+		chars.clear().flip();
+	}
+
+	/**
+	 * Decodes the next chunk into chars
+	 * @return false at the end of the bytes
+	 */
+	private boolean decode(){
+		chars.clear();
+		while(chars.position() == 0){
+			if(bytes.hasRemaining()){
+				CoderResult result = decoder.decode(bytes, chars, true);
+				if(result.isError()){
+					//Replaced by the decoder, only reached for inputs it can not skip
+					bytes.position(bytes.position() + result.length());
+				}
+			} else if(!flushed){
+				decoder.flush(chars);
+				flushed = true;
+			} else {
+				break;
+			}
+		}
+		chars.flip();
+		return chars.hasRemaining();
+	}
+
+}
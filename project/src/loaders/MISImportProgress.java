@@ -0,0 +1,16 @@
+package loaders;
+
+import data_types.MISScene;
+
+public interface MISImportProgress {
+
+	/**
+	 * Called by the importing threads after every scene file, in no particular order
+	 * @param path res:// path of the file
+	 * @param scene the loaded scene, null when it could not be read
+	 * @param done number of files finished so far
+	 * @param total number of files being imported
+	 */
+	public void sceneLoaded(String path, MISScene scene, int done, int total);
+
+}
@@ -7,15 +7,24 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 
+import data_types.MIS3DPosition;
 import data_types.MISExternalResource;
 import data_types.MISNode;
+import data_types.MISPosition;
 import data_types.MISScene;
 import project.MISProject;
 import project.MISProjectInformation;
 
 public class MISLoader {
 
+	//Section of the .tscn file being read
+	private static final int SECTION_OTHER = 0;
+	private static final int SECTION_SCENE = 1;
+	private static final int SECTION_EXT_RESOURCE = 2;
+	private static final int SECTION_NODE = 3;
+
 	public static void main(String[] args) {
 		MISLoader.loadSceneByLocation("resources/testresources/Sce.tscn");
 	}
@@ -26,85 +35,130 @@ public class MISLoader {
 	 * @return MISScene or null
 	 */
 	public static MISScene loadSceneByLocation(String location){
+		return loadSceneByLocation(location, 1234);
+	}
+	
+	/**
+	 * Reads and returns the loaded scene based on location(file included)
+	 * @param location
+	 * @param id IDNumber of the scene
+	 * @return MISScene or null
+	 */
+	public static MISScene loadSceneByLocation(String location, int id){
 		try {
-			BufferedReader reader = new BufferedReader(new FileReader(location));
-			String readLine = "";
-			MISScene scene = new MISScene(1234);
-			String[] temp = location.split("/");
-			scene.name = temp[temp.length-1].split(".tscn")[0];
-			MISNode lastNode = null;
-			while((readLine = reader.readLine()) != null){
-				if(readLine.startsWith("[ext_resource")){
-					MISExternalResource externalResource = new MISExternalResource();
-					if(readLine.contains("path=\"")){
-						externalResource.path = readLine.split("path=\"")[1].split("\"")[0];
-						String[] values = externalResource.path.split("/");
-						externalResource.name = values[values.length-1];		
-					}
-					if(readLine.contains("type=\"")){
-						externalResource.type = readLine.split("type=\"")[1].split("\"")[0];
-					}
-					if(readLine.contains("id=")){
-						externalResource.id = Integer.parseInt(readLine.split("id=")[1].split("]")[0]);
-					}
-					scene.addExternalResource(externalResource);
-				} else if(readLine.startsWith("[node")){
-					MISNode node = new MISNode();
-					if(readLine.contains("name=\"")){
-						node.name = readLine.split("name=\"")[1].split("\"")[0];
-					}
-					if(readLine.contains("type=\"")){
-						node.type = readLine.split("type=\"")[1].split("\"")[0];
+			File file = new File(location);
+			//Mapped when large, streamed otherwise
+			MISSceneTokenizer tokens = MISMappedFile.openScene(file);
+			try {
+				MISScene scene = new MISScene(id);
+				scene.name = file.getName().split(".tscn")[0];
+				readScene(tokens, scene);
+				return scene;
+			} finally {
+				tokens.close();
+			}
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+	
+	/**
+	 * Adds the external resources and nodes of a .tscn file to the scene
+	 * @param tokens
+	 * @param scene
+	 * @throws IOException
+	 */
+	public static void readScene(MISSceneTokenizer tokens, MISScene scene) throws IOException{
+		int section = SECTION_OTHER;
+		MISExternalResource externalResource = null;
+		MISNode node = null;
+		String parentPath = null;
+		//Node paths as written in parent="...", the root is "."
+		HashMap<String, MISNode> paths = new HashMap<String, MISNode>();
+		MISNode lastNode = null;
+		double[] coordinates = new double[3];
+		int token;
+		while((token = tokens.next()) != MISSceneTokenizer.EOF){
+			if(token == MISSceneTokenizer.SECTION){
+				if(tokens.isKey("node")){
+					section = SECTION_NODE;
+					node = new MISNode();
+					parentPath = null;
+				} else if(tokens.isKey("ext_resource")){
+					section = SECTION_EXT_RESOURCE;
+					externalResource = new MISExternalResource();
+				} else if(tokens.isKey("gd_scene")){
+					section = SECTION_SCENE;
+				} else {
+					section = SECTION_OTHER;
+				}
+			} else if(token == MISSceneTokenizer.ATTRIBUTE){
+				if(section == SECTION_NODE){
+					if(tokens.isKey("name")){
+						node.name = tokens.value();
+					} else if(tokens.isKey("type")){
+						node.type = tokens.value();
+					} else if(tokens.isKey("parent")){
+						parentPath = tokens.value();
+					} else if(tokens.isKey("index")){
+						node.index = tokens.intValue();
 					}
-					if(readLine.contains("parent=\"")){
-						String value = readLine.split("parent=\"")[1].split("\"")[0];
-						if(!value.equals(".")){
-							if(value.contains("/")){
-								String[] parents = value.split("/");
-								value = parents[parents.length-1];
-							}
-							for(int i = 0; i < scene.nodeList.size(); i++){
-								if(scene.nodeList.get(i).name.equals(value)){
-									node.parent = scene.nodeList.get(i);
-									break;
-								}
-							}
-						}
+				} else if(section == SECTION_EXT_RESOURCE){
+					if(tokens.isKey("path")){
+						externalResource.path = tokens.value();
+						externalResource.name = externalResource.path.substring(externalResource.path.lastIndexOf('/') + 1);
+					} else if(tokens.isKey("type")){
+						externalResource.type = tokens.value();
+					} else if(tokens.isKey("id")){
+						externalResource.id = tokens.intValue();
 					}
-					if(readLine.contains("index=\"")){
-						node.index = Integer.parseInt(readLine.split("index=\"")[1].split("\"")[0]);
+				} else if(section == SECTION_SCENE){
+					if(tokens.isKey("load_steps")){
+						scene.loadSteps = tokens.intValue();
+					} else if(tokens.isKey("format")){
+						scene.format = tokens.intValue();
 					}
+				}
+			} else if(token == MISSceneTokenizer.SECTION_END){
+				if(section == SECTION_NODE){
+					String path = parentPath == null ? "." : parentPath.equals(".") ? node.name : parentPath+"/"+node.name;
 					lastNode = node;
-					scene.addNode(node);
-				} else if(readLine.startsWith("script = ExtResource")){
-					if(lastNode != null){
-						readLine = readLine.replaceAll(" ", "");
-						String stringOfIndex = readLine.split("\\(")[1].split("\\)")[0];
-						lastNode.scriptAttached = true;
-						int index = Integer.parseInt(stringOfIndex);
-						for(MISExternalResource res : scene.externalResources){
-							if(index == res.id){
-								lastNode.scriptId = index;
-								lastNode.scriptName = res.name;
-								break;
-							}
+					//A path read before is the same node written twice
+					if(!paths.containsKey(path)){
+						MISNode parent = parentPath != null ? paths.get(parentPath) : null;
+						//Linked first, the scene tells children of different parents apart by it
+						if(parent != null){
+							parent.addChild(node);
+						}
+						//Only nodes whose parent is missing from the file can still collide
+						if(scene.addNode(node)){
+							paths.put(path, node);
 						}
 					}
-				} else if(readLine.startsWith("[gd_scene")){
-					String loadStepsString = readLine.split("load_steps=")[1].split(" ")[0];
-					scene.loadSteps = Integer.parseInt(loadStepsString);
-					String formatString = readLine.split("format=")[1].split("]")[0];
-					scene.format = Integer.parseInt(formatString);
+				} else if(section == SECTION_EXT_RESOURCE){
+					scene.addExternalResource(externalResource);
+				}
+			} else if(token == MISSceneTokenizer.PROPERTY){
+				if(section == SECTION_NODE && lastNode != null && tokens.isKey("script") && tokens.valueStartsWith("ExtResource")){
+					lastNode.scriptAttached = true;
+					MISExternalResource res = scene.getExternalResource(tokens.intValue());
+					if(res != null){
+						lastNode.scriptId = res.id;
+						lastNode.scriptName = res.name;
+					}
+				} else if(section == SECTION_NODE && lastNode != null && tokens.isKey("position") && tokens.valueStartsWith("Vector2")
+						&& tokens.numberValues(coordinates) == 2){
+					scene.moveNode(lastNode, new MISPosition((int) Math.round(coordinates[0]), (int) Math.round(coordinates[1])));
+				} else if(section == SECTION_NODE && lastNode != null && tokens.isKey("translation") && tokens.valueStartsWith("Vector3")
+						&& tokens.numberValues(coordinates) == 3){
+					scene.moveNode(lastNode, new MIS3DPosition((int) Math.round(coordinates[0]), (int) Math.round(coordinates[1]),
+							(int) Math.round(coordinates[2])));
 				}
 			}
-			reader.close();
-			return scene;
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (Exception e) {
-			e.printStackTrace();
 		}
-		return null;
 	}
 	
 	public static boolean saveProjectLocation(String[] locations, String[] date){
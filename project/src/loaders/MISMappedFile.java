@@ -0,0 +1,98 @@
+package loaders;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Opens files for the loaders. Scene files of at least MAP_THRESHOLD bytes are memory
+ * mapped and read in place, smaller ones are streamed, where mapping costs more than it saves.
+ * Project files are never mapped, saving rewrites them and a mapping is only dropped
+ * once it is garbage collected, keeping the file locked on Windows until then.
+ * Text is always read as UTF-8, the encoding Godot and the project files use.
+ */
+public class MISMappedFile {
+
+	public static final long MAP_THRESHOLD = 1024 * 1024;
+
+	/**
+	 * @param file
+	 * @return true when the file is large enough to be mapped and fits a single mapping
+	 */
+	public static boolean shouldMap(File file){
+		long length = file.length();
+		return length >= MAP_THRESHOLD && length <= Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Maps the whole file read only, the mapping stays valid after the file is closed
+	 * @param file
+	 * @return the mapped bytes
+	 * @throws IOException
+	 */
+	public static ByteBuffer map(File file) throws IOException{
+		RandomAccessFile access = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = access.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			access.close();
+		}
+	}
+
+	/**
+	 * @param file
+	 * @return a tokenizer over the mapped file, or over a stream for small files
+	 * @throws IOException
+	 */
+	public static MISSceneTokenizer openScene(File file) throws IOException{
+		if(shouldMap(file)){
+			return new MISSceneTokenizer(map(file));
+		}
+		return new MISSceneTokenizer(new FileInputStream(file));
+	}
+
+	/**
+	 * Reads the whole file into a heap buffer with as few reads as possible, the file is closed on return
+	 * @param file
+	 * @return the bytes of the file
+	 * @throws IOException
+	 */
+	public static ByteBuffer read(File file) throws IOException{
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer bytes = ByteBuffer.allocate((int) channel.size());
+			while(bytes.hasRemaining()){
+				if(channel.read(bytes) < 0){
+					//The file shrank meanwhile
+					break;
+				}
+			}
+			bytes.flip();
+			return bytes;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @param file
+	 * @return a UTF-8 reader decoding the file read at once as it is read, or a buffered stream for small files
+	 * @throws IOException
+	 */
+	public static Reader openReader(File file) throws IOException{
+		if(shouldMap(file)){
+			return new MISByteBufferReader(read(file));
+		}
+		return new InputStreamReader(new BufferedInputStream(new FileInputStream(file)), StandardCharsets.UTF_8);
+	}
+
+}
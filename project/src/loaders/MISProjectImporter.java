@@ -0,0 +1,225 @@
+package loaders;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import data_types.MISNode;
+import data_types.MISScene;
+import data_types.MISSymbolTable;
+import project.MISProject;
+
+/**
+ * Imports every .tscn file of a Godot project directory. The files are parsed in
+ * parallel on a fork join pool and merged in the order of their res:// paths, each
+ * scene with an id derived from its path, so importing the same tree again gives
+ * the same scenes, ids and symbol ids.
+ * Directories starting with a dot and directories with a .gdignore file are skipped.
+ * The scenes list of the project is changed without locking, so a project can not be
+ * imported into while it is loading or a MISServerLoop is serving its scenes.
+ */
+public class MISProjectImporter {
+
+	//Files parsed by one task without splitting further
+	private static final int FILES_PER_TASK = 1;
+
+	/**
+	 * Imports into MISProject.project with one thread per processor
+	 * @param root the directory holding project.godot
+	 * @param progress may be null
+	 * @return number of scenes imported
+	 * @throws IOException when the directory can not be walked
+	 */
+	public static int importProject(File root, MISImportProgress progress) throws IOException{
+		return importProject(MISProject.project, root, Runtime.getRuntime().availableProcessors(), progress);
+	}
+
+	/**
+	 * Loads every scene file below the root and merges them into the project.
+	 * A scene whose id is already in the project replaces it, the others are
+	 * appended in path order. Files that fail to load are reported with a null scene and skipped.
+	 * @param project
+	 * @param root the directory holding project.godot
+	 * @param parallelism number of threads parsing files
+	 * @param progress may be null
+	 * @return number of scenes imported
+	 * @throws IOException when the directory can not be walked
+	 * @throws IllegalStateException when there is no project, or it is loading or being served
+	 */
+	public static int importProject(MISProject project, File root, int parallelism, MISImportProgress progress) throws IOException{
+		if(project == null){
+			throw new IllegalStateException("No project to import into");
+		}
+		if(project.isLoading() || project.isServing()){
+			throw new IllegalStateException("Project "+project.projectName+" is "+(project.isLoading() ? "loading" : "being served"));
+		}
+		project.setLoading(true);
+		try {
+			return merge(project, root, parallelism, progress);
+		} finally {
+			project.setLoading(false);
+		}
+	}
+
+	/**
+	 * Parses the scene files and merges them into the project, see importProject
+	 */
+	private static int merge(MISProject project, File root, int parallelism, MISImportProgress progress) throws IOException{
+		List<String> paths = findScenes(root);
+		MISScene[] scenes = new MISScene[paths.size()];
+		int[] ids = sceneIds(paths);
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+		try {
+			pool.invoke(new ImportTask(root, paths, ids, scenes, 0, paths.size(), new AtomicInteger(), progress));
+		} finally {
+			pool.shutdown();
+		}
+		int imported = 0;
+		for(int i = 0; i < scenes.length; i++){
+			MISScene scene = scenes[i];
+			if(scene == null){
+				continue;
+			}
+			//Interned here in path order, so symbol ids do not depend on thread timing
+			for(MISNode node : scene.nodeList){
+				if(node.name != null){
+					MISSymbolTable.SYMBOLS.intern(node.name);
+				}
+			}
+			boolean replaced = false;
+			for(int j = 0; j < project.scenes.size(); j++){
+				if(project.scenes.get(j).IDNumber == scene.IDNumber){
+					project.scenes.set(j, scene);
+					replaced = true;
+					break;
+				}
+			}
+			if(!replaced){
+				project.scenes.add(scene);
+			}
+			imported++;
+		}
+		return imported;
+	}
+
+	/**
+	 * @param root
+	 * @return the res:// paths of the .tscn files below the root, sorted
+	 * @throws IOException
+	 */
+	public static List<String> findScenes(File root) throws IOException{
+		final Path rootPath = root.toPath();
+		final ArrayList<String> paths = new ArrayList<String>();
+		Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+				if(!directory.equals(rootPath) && (directory.getFileName().toString().startsWith(".")
+						|| Files.exists(directory.resolve(".gdignore")))){
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+				if(attributes.isRegularFile() && file.getFileName().toString().endsWith(".tscn")){
+					paths.add("res://"+rootPath.relativize(file).toString().replace(File.separatorChar, '/'));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		Collections.sort(paths);
+		return paths;
+	}
+
+	/**
+	 * @param path res:// path of a scene
+	 * @return a positive id that only depends on the path
+	 */
+	public static int sceneId(String path){
+		//32 bit FNV-1a over the UTF-8 bytes
+		int hash = 0x811C9DC5;
+		for(byte b : path.getBytes(StandardCharsets.UTF_8)){
+			hash ^= b & 0xFF;
+			hash *= 0x01000193;
+		}
+		return hash & 0x7FFFFFFF;
+	}
+
+	/**
+	 * Ids for the sorted paths, a path whose id is taken by an earlier one gets the next free id
+	 */
+	private static int[] sceneIds(List<String> paths){
+		int[] ids = new int[paths.size()];
+		HashSet<Integer> taken = new HashSet<Integer>();
+		for(int i = 0; i < ids.length; i++){
+			int id = sceneId(paths.get(i));
+			while(!taken.add(id)){
+				id = (id + 1) & 0x7FFFFFFF;
+			}
+			ids[i] = id;
+		}
+		return ids;
+	}
+
+	/**
+	 * Loads the files of a range, splitting it in halves until it is small
+	 */
+	private static class ImportTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final File root;
+		private final List<String> paths;
+		private final int[] ids;
+		private final MISScene[] scenes;
+		private final int from;
+		private final int to;
+		private final AtomicInteger done;
+		private final MISImportProgress progress;
+
+		ImportTask(File root, List<String> paths, int[] ids, MISScene[] scenes, int from, int to, AtomicInteger done, MISImportProgress progress){
+			this.root = root;
+			this.paths = paths;
+			this.ids = ids;
+			this.scenes = scenes;
+			this.from = from;
+			this.to = to;
+			this.done = done;
+			this.progress = progress;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from > FILES_PER_TASK){
+				int middle = (from + to) >>> 1;
+				invokeAll(new ImportTask(root, paths, ids, scenes, from, middle, done, progress),
+						new ImportTask(root, paths, ids, scenes, middle, to, done, progress));
+				return;
+			}
+			for(int i = from; i < to; i++){
+				String path = paths.get(i);
+				File file = new File(root, path.substring("res://".length()));
+				scenes[i] = MISLoader.loadSceneByLocation(file.getPath(), ids[i]);
+				int finished = done.incrementAndGet();
+				if(progress != null){
+					progress.sceneLoaded(path, scenes[i], finished, paths.size());
+				}
+			}
+		}
+
+	}
+
+}
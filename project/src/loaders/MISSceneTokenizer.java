@@ -0,0 +1,413 @@
+package loaders;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Single pass tokenizer for Godot .tscn files, reading the UTF-8 bytes directly.
+ * A section header like [node name="Label" parent="."] gives a SECTION token,
+ * one ATTRIBUTE token per key=value and a SECTION_END token, the key = value lines
+ * below it give PROPERTY tokens. Values may span lines inside quotes or brackets.
+ * Keys and values are only turned into Strings when asked for.
+ * Reads from a stream through a growing buffer, or straight from a ByteBuffer
+ * holding the whole file, like a mapped one.
+ */
+public class MISSceneTokenizer {
+
+	public static final int EOF = 0;
+	public static final int SECTION = 1;
+	public static final int ATTRIBUTE = 2;
+	public static final int SECTION_END = 3;
+	public static final int PROPERTY = 4;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	//null when the buffer holds the whole file
+	private final InputStream in;
+	private ByteBuffer buffer;
+	//For decoding Strings out of buffers without an array
+	private byte[] scratch;
+	private int position;
+	private int limit;
+	//Start of the current token, bytes from here on are kept when refilling
+	private int mark = -1;
+	private boolean started;
+	private boolean inHeader;
+	//Current token, the name of a section is its key
+	private int keyStart, keyEnd;
+	private int valueStart, valueEnd;
+	private boolean quoted;
+
+	public MISSceneTokenizer(InputStream in){
+		this.in = in;
+		buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	}
+
+	/**
+	 * Tokenizes the remaining bytes of the buffer in place, nothing is copied
+	 * @param bytes the whole file, for example mapped with MISMappedFile
+	 */
+	public MISSceneTokenizer(ByteBuffer bytes){
+		in = null;
+		buffer = bytes.slice();
+		limit = buffer.limit();
+	}
+
+	/**
+	 * Reads the next token
+	 * @return EOF, SECTION, ATTRIBUTE, SECTION_END or PROPERTY
+	 * @throws IOException
+	 */
+	public int next() throws IOException{
+		mark = -1;
+		if(!started){
+			started = true;
+			skipByteOrderMark();
+		}
+		while(true){
+			int c = skipWhitespace();
+			if(c < 0){
+				return EOF;
+			}
+			mark = position;
+			if(inHeader){
+				if(c == ']'){
+					position++;
+					inHeader = false;
+					return SECTION_END;
+				}
+				if(readKey()){
+					readValue(true);
+					return ATTRIBUTE;
+				}
+				//Attribute without value
+				continue;
+			}
+			if(c == '['){
+				position++;
+				keyStart = position;
+				while((c = peek()) >= 0 && c != ']' && !isWhitespace(c)){
+					position++;
+				}
+				keyEnd = position;
+				valueStart = valueEnd = position;
+				inHeader = true;
+				return SECTION;
+			}
+			if(c == ';'){
+				skipLine();
+				continue;
+			}
+			if(readKey()){
+				readValue(false);
+				return PROPERTY;
+			}
+			skipLine();
+		}
+	}
+
+	/**
+	 * Closes the stream, if reading from one
+	 * @throws IOException
+	 */
+	public void close() throws IOException{
+		if(in != null){
+			in.close();
+		}
+	}
+
+	/**
+	 * @param key ASCII
+	 * @return true when the key or section name of the current token is the given one
+	 */
+	public boolean isKey(String key){
+		if(keyEnd - keyStart != key.length()){
+			return false;
+		}
+		for(int i = 0; i < key.length(); i++){
+			if(buffer.get(keyStart + i) != key.charAt(i)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public String key(){
+		return string(keyStart, keyEnd);
+	}
+
+	/**
+	 * @return the value without its quotes
+	 */
+	public String value(){
+		return string(valueStart, valueEnd);
+	}
+
+	/**
+	 * @return true when the value was quoted
+	 */
+	public boolean isQuoted(){
+		return quoted;
+	}
+
+	/**
+	 * @param prefix ASCII
+	 * @return true when the value starts with the prefix
+	 */
+	public boolean valueStartsWith(String prefix){
+		if(valueEnd - valueStart < prefix.length()){
+			return false;
+		}
+		for(int i = 0; i < prefix.length(); i++){
+			if(buffer.get(valueStart + i) != prefix.charAt(i)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parses the first integer in the value, so both 3 and ExtResource( 3 ) give 3
+	 * @return the integer
+	 * @throws NumberFormatException when the value holds no integer
+	 */
+	public int intValue(){
+		int i = valueStart;
+		while(i < valueEnd && buffer.get(i) != '-' && (buffer.get(i) < '0' || buffer.get(i) > '9')){
+			i++;
+		}
+		boolean negative = i < valueEnd && buffer.get(i) == '-';
+		if(negative){
+			i++;
+		}
+		if(i == valueEnd || buffer.get(i) < '0' || buffer.get(i) > '9'){
+			throw new NumberFormatException("No integer in "+value());
+		}
+		long result = 0;
+		while(i < valueEnd && buffer.get(i) >= '0' && buffer.get(i) <= '9'){
+			result = result * 10 + (buffer.get(i) - '0');
+			if(result > Integer.MAX_VALUE + 1L){
+				throw new NumberFormatException("Integer too large in "+value());
+			}
+			i++;
+		}
+		result = negative ? -result : result;
+		if(result > Integer.MAX_VALUE){
+			throw new NumberFormatException("Integer too large in "+value());
+		}
+		return (int) result;
+	}
+
+	/**
+	 * Parses the numbers in the value, so Vector2( 12.5, -3 ) gives 12.5 and -3
+	 * @param out receives up to out.length numbers
+	 * @return number of numbers found
+	 */
+	public int numberValues(double[] out){
+		int count = 0;
+		int i = valueStart;
+		while(i < valueEnd && count < out.length){
+			int c = buffer.get(i);
+			boolean negative = c == '-';
+			int start = negative ? i + 1 : i;
+			if(start >= valueEnd || !isNumberStart(buffer.get(start), start + 1 < valueEnd ? buffer.get(start + 1) : 0)
+					|| (i > valueStart && isNamePart(buffer.get(i - 1)))){
+				i++;
+				continue;
+			}
+			i = start;
+			double value = 0;
+			while(i < valueEnd && buffer.get(i) >= '0' && buffer.get(i) <= '9'){
+				value = value * 10 + (buffer.get(i++) - '0');
+			}
+			if(i < valueEnd && buffer.get(i) == '.'){
+				double scale = 1;
+				i++;
+				while(i < valueEnd && buffer.get(i) >= '0' && buffer.get(i) <= '9'){
+					scale /= 10;
+					value += (buffer.get(i++) - '0') * scale;
+				}
+			}
+			if(i < valueEnd && (buffer.get(i) == 'e' || buffer.get(i) == 'E')){
+				int j = i + 1;
+				boolean negativeExponent = j < valueEnd && buffer.get(j) == '-';
+				if(j < valueEnd && (buffer.get(j) == '-' || buffer.get(j) == '+')){
+					j++;
+				}
+				int exponent = 0;
+				while(j < valueEnd && buffer.get(j) >= '0' && buffer.get(j) <= '9'){
+					exponent = Math.min(400, exponent * 10 + (buffer.get(j++) - '0'));
+				}
+				value *= Math.pow(10, negativeExponent ? -exponent : exponent);
+				i = j;
+			}
+			out[count++] = negative ? -value : value;
+		}
+		return count;
+	}
+
+	private static boolean isNumberStart(int c, int next){
+		return (c >= '0' && c <= '9') || (c == '.' && next >= '0' && next <= '9');
+	}
+
+	//Digits inside names like Vector2 are no numbers
+	private static boolean isNamePart(int c){
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '.';
+	}
+
+	/**
+	 * Reads a key up to '=', with the spaces around it
+	 * @return false when the line or header ended before a '='
+	 */
+	private boolean readKey() throws IOException{
+		keyStart = position;
+		int c;
+		while((c = peek()) >= 0 && c != '=' && c != '\n' && c != ']' && !(inHeader && isWhitespace(c))){
+			position++;
+		}
+		keyEnd = position;
+		while(keyEnd > keyStart && isWhitespace(buffer.get(keyEnd - 1))){
+			keyEnd--;
+		}
+		if(c != '='){
+			return false;
+		}
+		position++;
+		while((c = peek()) == ' ' || c == '\t'){
+			position++;
+		}
+		return true;
+	}
+
+	/**
+	 * Reads a quoted value, or up to the end of the line or header outside of brackets
+	 * @param attribute true in a header, where whitespace and ']' end the value
+	 */
+	private void readValue(boolean attribute) throws IOException{
+		int c = peek();
+		quoted = c == '"';
+		if(quoted){
+			position++;
+			valueStart = position;
+			while((c = peek()) >= 0 && c != '"'){
+				position += c == '\\' ? 2 : 1;
+			}
+			valueEnd = Math.min(position, limit);
+			position++;
+			if(!attribute){
+				skipLine();
+			}
+			return;
+		}
+		valueStart = position;
+		int depth = 0;
+		boolean inString = false;
+		while((c = peek()) >= 0){
+			if(inString){
+				if(c == '\\'){
+					position++;
+				} else if(c == '"'){
+					inString = false;
+				}
+			} else if(c == '"'){
+				inString = true;
+			} else if(c == '(' || c == '[' || c == '{'){
+				depth++;
+			} else if(c == ')' || c == '}' || (c == ']' && depth > 0)){
+				depth--;
+			} else if(depth == 0 && (c == '\n' || (attribute && (c == ']' || isWhitespace(c))))){
+				break;
+			}
+			position++;
+		}
+		valueEnd = Math.min(position, limit);
+		while(valueEnd > valueStart && isWhitespace(buffer.get(valueEnd - 1))){
+			valueEnd--;
+		}
+	}
+
+	private String string(int start, int end){
+		if(buffer.hasArray()){
+			return new String(buffer.array(), buffer.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+		}
+		if(scratch == null || scratch.length < end - start){
+			scratch = new byte[Math.max(256, end - start)];
+		}
+		ByteBuffer view = buffer.duplicate();
+		view.limit(end).position(start);
+		view.get(scratch, 0, end - start);
+		return new String(scratch, 0, end - start, StandardCharsets.UTF_8);
+	}
+
+	private void skipByteOrderMark() throws IOException{
+		if(peek() == 0xEF && limit - position >= 3 && (buffer.get(position + 1) & 0xFF) == 0xBB && (buffer.get(position + 2) & 0xFF) == 0xBF){
+			position += 3;
+		}
+	}
+
+	private int skipWhitespace() throws IOException{
+		int c;
+		while((c = peek()) >= 0 && isWhitespace(c)){
+			position++;
+		}
+		return c;
+	}
+
+	private void skipLine() throws IOException{
+		int c;
+		while((c = peek()) >= 0 && c != '\n'){
+			position++;
+		}
+	}
+
+	private int peek() throws IOException{
+		if(position >= limit && !fill()){
+			return -1;
+		}
+		return buffer.get(position) & 0xFF;
+	}
+
+	/**
+	 * Reads more bytes, keeping the current token from mark on
+	 * @return false at the end of the stream
+	 */
+	private boolean fill() throws IOException{
+		if(in == null){
+			return false;
+		}
+		int keep = mark >= 0 ? mark : position;
+		byte[] array = buffer.array();
+		if(keep > 0){
+			System.arraycopy(array, keep, array, 0, limit - keep);
+			limit -= keep;
+			position -= keep;
+			keyStart -= keep;
+			keyEnd -= keep;
+			valueStart -= keep;
+			valueEnd -= keep;
+			if(mark >= 0){
+				mark = 0;
+			}
+		}
+		if(limit == array.length){
+			//A single token larger than the buffer
+			ByteBuffer larger = ByteBuffer.allocate(array.length * 2);
+			System.arraycopy(array, 0, larger.array(), 0, limit);
+			buffer = larger;
+			array = larger.array();
+		}
+		int read = in.read(array, limit, array.length - limit);
+		if(read <= 0){
+			return false;
+		}
+		limit += read;
+		return position < limit || fill();
+	}
+
+	private static boolean isWhitespace(int c){
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+
+}
@@ -1,12 +1,35 @@
 package main;
 
+import project.MISProject;
+import server.MISServerLoop;
+
 public class Main {
 
 	public static final double MIS_BUILD_VERSION = 0.01;
 	
+	/**
+	 * Runs the server headless
+	 * @param args project location, optionally followed by --spin
+	 */
 	public static void main(String[] args) {
-		// TODO Auto-generated method stub
-		
+		if(args.length == 0){
+			System.out.println("Usage: Main <project location> [--spin]");
+			return;
+		}
+		if(!MISProject.loadProject(args[0])){
+			System.out.println("Could not load the project at "+args[0]);
+			return;
+		}
+		final MISServerLoop loop = new MISServerLoop(MISProject.project);
+		loop.setSpin(args.length > 1 && args[1].equals("--spin"));
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				loop.stop();
+			}
+		});
+		System.out.println("Running "+MISProject.project.projectName+" at "+MISProject.project.refreshRate+" ticks per second");
+		loop.run();
 	}
 
 }
@@ -1,26 +1,38 @@
 package project;
 
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
+import data_types.MIS3DPosition;
 import data_types.MISExternalResource;
 import data_types.MISNode;
 import data_types.MISPort;
+import data_types.MISPosition;
 import data_types.MISScene;
+import data_types.MISSymbolTable;
+import enums.MISExecutionMode;
 import enums.MISListType;
+import enums.MISOverflowPolicy;
 import enums.MISProtocol;
 import enums.MISType;
 import loaders.MISLoader;
+import loaders.MISMappedFile;
 import scene.MISBroadcast;
 import scene.MISBroadcastData;
 import scene.MISBroadcastValue;
 import scene.MISBroastcastMessage;
+import scene.MISSnapshotBroadcast;
 import settings.MISGeneralSettings;
 
 import static java.lang.Math.toIntExact;
@@ -29,13 +41,19 @@ public class MISProject {
 
 	public static MISProject project;
 	private boolean isSaving = false;
-	private boolean isLoading = false;
+	private volatile boolean isLoading = false;
+	//Whether a MISServerLoop is ticking the scenes
+	private volatile boolean isServing = false;
 	
 	public MISProject(){
 		listType = MISListType.ARRAY;
 		refreshRate = MISGeneralSettings.STANDARD_REFRESH_RATE;
 		maxMessagesPerClientPerSecond = MISGeneralSettings.STANDARD_MAX_MESSAGES_PER_CLIENT_PER_SECOND;
+		maxBytesPerClientPerSecond = MISGeneralSettings.STANDARD_MAX_BYTES_PER_CLIENT_PER_SECOND;
+		outboundQueueSize = MISGeneralSettings.STANDARD_OUTBOUND_QUEUE_SIZE;
+		overflowPolicy = MISGeneralSettings.STANDARD_OVERFLOW_POLICY;
 		timeOutDuration = MISGeneralSettings.STANDARD_TIMEOUT;
+		executionMode = MISGeneralSettings.STANDARD_EXECUTION_MODE;
 		ports = new ArrayList<MISPort>();
 		scenes = new ArrayList<MISScene>();
 	}
@@ -46,6 +64,28 @@ public class MISProject {
 		this.projectLocation = projectLocation;
 		this.targetEngine = targetEngine;
 	}
+
+	/**
+	 * @return true while loadProject or MISProjectImporter fills the project
+	 */
+	public boolean isLoading(){
+		return isLoading;
+	}
+
+	public void setLoading(boolean loading){
+		isLoading = loading;
+	}
+
+	/**
+	 * @return true while a MISServerLoop is running on the scenes of the project
+	 */
+	public boolean isServing(){
+		return isServing;
+	}
+
+	public void setServing(boolean serving){
+		isServing = serving;
+	}
 	
 	@SuppressWarnings("unchecked")
 	/**
@@ -69,6 +109,11 @@ public class MISProject {
 		projectGeneralSettingsObject.put("list_type", MISProject.project.listType.toString());
 		projectGeneralSettingsObject.put("refresh_rate", MISProject.project.refreshRate);
 		projectGeneralSettingsObject.put("mmpcps", MISProject.project.maxMessagesPerClientPerSecond);
+		projectGeneralSettingsObject.put("mbpcps", MISProject.project.maxBytesPerClientPerSecond);
+		projectGeneralSettingsObject.put("outbound_queue_size", MISProject.project.outboundQueueSize);
+		projectGeneralSettingsObject.put("overflow_policy", MISProject.project.overflowPolicy.toString());
+		projectGeneralSettingsObject.put("execution_mode", MISProject.project.executionMode.toString());
+		projectGeneralSettingsObject.put("timeout", MISProject.project.timeOutDuration);
 		
 		JSONObject portsObjects = new JSONObject();
 		if(MISProject.project.ports != null && MISProject.project.ports.size() > 0){
@@ -97,10 +142,15 @@ public class MISProject {
 				
 				JSONObject nodesObject = new JSONObject();
 				nodesObject.put("nodes_n", scene.nodeList.size());
+				IdentityHashMap<MISNode, Integer> nodeNumbers = new IdentityHashMap<MISNode, Integer>();
+				for(int j = 0; j < scene.nodeList.size(); j++){
+					nodeNumbers.put(scene.nodeList.get(j), j);
+				}
 				for(int j = 0; j < scene.nodeList.size(); j++){
 					JSONObject nodeObject = new JSONObject();
 					MISNode node = scene.nodeList.get(j);
 					nodeObject.put("name", node.name);
+					nodeObject.put("id_number", node.id);
 					nodeObject.put("type", node.type);
 					nodeObject.put("index", node.index);
 					nodeObject.put("script_attached", node.scriptAttached);
@@ -108,10 +158,15 @@ public class MISProject {
 						nodeObject.put("script_name", node.scriptName);
 						nodeObject.put("script_id", node.scriptId);
 					}
+					writePosition(nodeObject, "position", node.position);
 					nodeObject.put("parent", node.parent != null);
 					if(node.parent != null){
 						nodeObject.put("parent_name", node.parent.name);
 						nodeObject.put("parent_index", node.parent.index);
+						//The parents place in the node list, names alone are not unique
+						if(nodeNumbers.containsKey(node.parent)){
+							nodeObject.put("parent_number", nodeNumbers.get(node.parent));
+						}
 					}
 					nodesObject.put(""+j, nodeObject);
 				}
@@ -125,6 +180,9 @@ public class MISProject {
 					//Not sure if the below line works.
 					broadcastObject.put("type", broadcast.getClass().getSimpleName());
 					broadcastObject.put("sps", broadcast.secondsPerSend);
+					broadcastObject.put("priority", broadcast.priority);
+					broadcastObject.put("reliable", broadcast.reliable);
+					writePosition(broadcastObject, "origin", broadcast.origin);
 					broadcastObject.put("data", broadcast.dataToSend());
 					broadcastsObject.put(""+j, broadcastObject);
 				}
@@ -151,7 +209,8 @@ public class MISProject {
 		mainObject.put("scenes", scenesObject);
 		
 		try {
-			FileWriter file = new FileWriter(MISProject.project.projectLocation+"/project.json");
+			//UTF-8 like the loaders read it, whatever the platform charset
+			Writer file = new OutputStreamWriter(new FileOutputStream(MISProject.project.projectLocation+"/project.json"), StandardCharsets.UTF_8);
 			file.write(mainObject.toJSONString());
 			file.flush();
 			file.close();
@@ -187,10 +246,14 @@ public class MISProject {
 		System.out.println("ProjectLocation: "+MISProject.project.projectLocation);
 		System.out.println("Refresh rate: "+MISProject.project.refreshRate);
 		System.out.println("mmpcps: "+MISProject.project.maxMessagesPerClientPerSecond);
+		System.out.println("mbpcps: "+MISProject.project.maxBytesPerClientPerSecond);
+		System.out.println("Outbound queue size: "+MISProject.project.outboundQueueSize);
+		System.out.println("Overflow policy: "+MISProject.project.overflowPolicy);
 		System.out.println("minimum Build Version: "+MISProject.project.minimumBuildVersion);
 		System.out.println("Target engine: "+MISProject.project.targetEngine);
 		System.out.println("Timeout duration: "+MISProject.project.timeOutDuration);
 		System.out.println("List type: "+MISProject.project.listType);
+		System.out.println("Execution mode: "+MISProject.project.executionMode);
 		for(int i  = 0; i < MISProject.project.ports.size(); i++){
 			System.out.println();
 			System.out.println("For port #"+i);
@@ -256,7 +319,13 @@ public class MISProject {
 		
 		JSONParser parser = new JSONParser();
 		try {
-			Object obj = parser.parse(new FileReader(projectLocation+"/project.json"));
+			Reader reader = MISMappedFile.openReader(new File(projectLocation+"/project.json"));
+			Object obj;
+			try {
+				obj = parser.parse(reader);
+			} finally {
+				reader.close();
+			}
 			JSONObject jsonObject = (JSONObject) obj;
 			JSONObject generalSettings = (JSONObject) jsonObject.get("general_settings");
 			String projectName = (String) generalSettings.get("name");
@@ -271,6 +340,22 @@ public class MISProject {
 			MISProject.project.listType = MISListType.valueOf((String) projectSettings.get("list_type"));
 			MISProject.project.refreshRate = toIntExact((Long) projectSettings.get("refresh_rate"));
 			MISProject.project.maxMessagesPerClientPerSecond = toIntExact((Long) projectSettings.get("mmpcps"));
+			//Projects saved before the execution mode existed keep the standard mode
+			if(projectSettings.get("execution_mode") != null){
+				MISProject.project.executionMode = MISExecutionMode.valueOf((String) projectSettings.get("execution_mode"));
+			}
+			if(projectSettings.get("timeout") != null){
+				MISProject.project.timeOutDuration = toIntExact((Long) projectSettings.get("timeout"));
+			}
+			if(projectSettings.get("mbpcps") != null){
+				MISProject.project.maxBytesPerClientPerSecond = toIntExact((Long) projectSettings.get("mbpcps"));
+			}
+			if(projectSettings.get("outbound_queue_size") != null){
+				MISProject.project.outboundQueueSize = toIntExact((Long) projectSettings.get("outbound_queue_size"));
+			}
+			if(projectSettings.get("overflow_policy") != null){
+				MISProject.project.overflowPolicy = MISOverflowPolicy.valueOf((String) projectSettings.get("overflow_policy"));
+			}
 			
 			JSONObject ports = (JSONObject) projectSettings.get("ports");
 			int numberOfPorts = toIntExact((Long) projectSettings.get("ports_n"));
@@ -297,6 +382,11 @@ public class MISProject {
 					JSONObject nodeObject = (JSONObject) nodesObject.get(""+j);
 					MISNode node = new MISNode();
 					node.name = (String) nodeObject.get("name");
+					//Node names are the keys of the variables synced per node
+					MISSymbolTable.SYMBOLS.intern(node.name);
+					if(nodeObject.get("id_number") != null){
+						node.id = toIntExact((Long) nodeObject.get("id_number"));
+					}
 					node.type = (String) nodeObject.get("type");
 					node.index = toIntExact((Long) nodeObject.get("index"));
 					node.scriptAttached = (Boolean) nodeObject.get("script_attached");
@@ -304,8 +394,12 @@ public class MISProject {
 						node.scriptName = (String) nodeObject.get("script_name");
 						node.scriptId = toIntExact((Long) nodeObject.get("script_id"));
 					}
+					node.position = readPosition(nodeObject, "position");
 					boolean hasParent = (Boolean) nodeObject.get("parent");
-					if(hasParent){
+					Long parentNumber = (Long) nodeObject.get("parent_number");
+					if(hasParent && parentNumber != null && parentNumber < scene.nodeList.size()){
+						scene.nodeList.get(toIntExact(parentNumber)).addChild(node);
+					} else if(hasParent){
 						node.parent = new MISNode();
 						node.parent.name = (String) nodeObject.get("parent_name");
 						node.parent.index = toIntExact((Long) nodeObject.get("parent_index"));
@@ -327,8 +421,17 @@ public class MISProject {
 						broadcast = new MISBroadcastValue(secondsPerSend);
 					} else if(type.equals(MISBroastcastMessage.class.getSimpleName())){
 						broadcast = new MISBroastcastMessage(secondsPerSend, data);
+					} else if(type.equals(MISSnapshotBroadcast.class.getSimpleName())){
+						broadcast = new MISSnapshotBroadcast(secondsPerSend);
 					}
 					if(broadcast != null){
+						if(broadcastObject.get("priority") != null){
+							broadcast.priority = (float)((double) broadcastObject.get("priority"));
+						}
+						if(broadcastObject.get("reliable") != null){
+							broadcast.reliable = (Boolean) broadcastObject.get("reliable");
+						}
+						broadcast.origin = readPosition(broadcastObject, "origin");
 						scene.addBroadcast(broadcast);
 					} 
 				}
@@ -356,6 +459,36 @@ public class MISProject {
 		return false;
 	}
 	
+	/**
+	 * Writes the position as name set to whether it exists and name_x, name_y and for 3D name_z
+	 */
+	@SuppressWarnings("unchecked")
+	private static void writePosition(JSONObject object, String name, MISPosition position){
+		object.put(name, position != null);
+		if(position != null){
+			object.put(name+"_x", position.x);
+			object.put(name+"_y", position.y);
+			if(position instanceof MIS3DPosition){
+				object.put(name+"_z", ((MIS3DPosition) position).z);
+			}
+		}
+	}
+	
+	/**
+	 * @return the position written by writePosition, null when there is none
+	 */
+	private static MISPosition readPosition(JSONObject object, String name){
+		if(!Boolean.TRUE.equals(object.get(name))){
+			return null;
+		}
+		int x = toIntExact((Long) object.get(name+"_x"));
+		int y = toIntExact((Long) object.get(name+"_y"));
+		if(object.get(name+"_z") != null){
+			return new MIS3DPosition(x, y, toIntExact((Long) object.get(name+"_z")));
+		}
+		return new MISPosition(x, y);
+	}
+	
 	/*
 	 * Architecture settings
 	 */
@@ -363,7 +496,13 @@ public class MISProject {
 	public MISListType listType;
 	public int refreshRate;
 	public int maxMessagesPerClientPerSecond;
+	//Broadcast bytes per client per second, 0 for no limit
+	public int maxBytesPerClientPerSecond;
+	//Frames queued per client before the overflow policy kicks in
+	public int outboundQueueSize;
+	public MISOverflowPolicy overflowPolicy;
 	public int timeOutDuration;
+	public MISExecutionMode executionMode;
 	public ArrayList<MISPort> ports;
 	public double minimumBuildVersion = 0.01;
 	public ArrayList<MISScene> scenes; //todo add to save/load
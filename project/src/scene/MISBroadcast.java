@@ -1,9 +1,30 @@
 package scene;
 
+import java.util.ArrayList;
+import java.util.Collection;
+
+import connector.MISClient;
+import connector.MISConnector;
+import data_types.MISPackage;
+import data_types.MISPosition;
+import data_types.MISScene;
+import data_types.MISString;
+
 public abstract class MISBroadcast {
 	
+	//Wanted interval, a hint when clients have a bandwidth budget
 	public float secondsPerSend;
+	//Priority gained per tick while waiting for a clients bandwidth budget
+	public float priority = 1f;
+	//Where the broadcast happens, null to reach every client of the scene
+	public MISPosition origin;
+	//Sent on the reliable channel, for broadcasts a client must not miss
+	public boolean reliable;
 	private long millisTimeLastSend;
+	//Kept by MISBroadcastScheduler
+	long nanosNextSend;
+	int heapIndex = -1;
+	private final ArrayList<MISClient> inRange = new ArrayList<MISClient>();
 	
 	public MISBroadcast(float secondsPerSend){
 		this.secondsPerSend = secondsPerSend;
@@ -12,6 +33,55 @@ public abstract class MISBroadcast {
 	
 	public abstract String dataToSend();
 	
+	/**
+	 * Builds the packet sent to the clients, by default the data as a single string field
+	 * @return MISPackage
+	 */
+	public MISPackage toPackage(){
+		MISPackage packet = new MISPackage(MISPackage.TYPE_BROADCAST);
+		String data = dataToSend();
+		if(data != null){
+			packet.addVariable(new MISString("data", data));
+		}
+		packet.reliable = reliable;
+		return packet;
+	}
+	
+	/**
+	 * Sends the broadcast to the clients of the scene that see its origin,
+	 * by default toPackage encoded once for all
+	 * @param scene
+	 * @return number of clients it was queued for
+	 */
+	public int send(MISScene scene){
+		return MISConnector.broadcast(receivers(scene), toPackage(), this, priority, origin);
+	}
+	
+	/**
+	 * @param scene
+	 * @return every client of the scene, or the ones that see the origin when it is set
+	 */
+	protected Collection<MISClient> receivers(MISScene scene){
+		MISPosition position = origin;
+		if(position == null){
+			return scene.clients;
+		}
+		inRange.clear();
+		scene.grid.query(position, inRange);
+		return inRange;
+	}
+	
+	/**
+	 * Resets the timer used by shouldSend
+	 */
+	public void markSent(){
+		millisTimeLastSend = System.currentTimeMillis();
+	}
+	
+	long intervalNanos(){
+		return Math.max(1L, (long)(secondsPerSend * 1000000000.0));
+	}
+	
 	public boolean shouldSend(){
 		if(System.currentTimeMillis() > (millisTimeLastSend + (long)(secondsPerSend * 1000))){
 			return true;
@@ -1,16 +1,19 @@
 package scene;
 
-public class MISBroadcastData extends MISBroadcast{
+import data_types.MISVariable;
+
+/**
+ * Sends every changed variable of the scene
+ */
+public class MISBroadcastData extends MISDeltaBroadcast{
 
 	public MISBroadcastData(float secondsPerSend) {
 		super(secondsPerSend);
-		// TODO Auto-generated constructor stub
 	}
 
 	@Override
-	public String dataToSend() {
-		// TODO Auto-generated method stub
-		return null;
+	protected boolean includes(MISVariable variable) {
+		return true;
 	}
 
 }
@@ -0,0 +1,134 @@
+package scene;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Fires broadcasts at their secondsPerSend interval from a binary heap ordered
+ * on the next send time (System.nanoTime). A poll only touches the broadcasts
+ * that are due, so its cost does not grow with the number of idle broadcasts.
+ * Not thread safe, it belongs to the thread ticking the scene.
+ */
+public class MISBroadcastScheduler {
+
+	private MISBroadcast[] heap;
+	private int size;
+
+	public MISBroadcastScheduler(){
+		heap = new MISBroadcast[16];
+	}
+
+	/**
+	 * Schedules the broadcast to fire one interval from now
+	 * @param broadcast
+	 * @param nowNanos
+	 */
+	public void schedule(MISBroadcast broadcast, long nowNanos){
+		if(broadcast.heapIndex >= 0){
+			cancel(broadcast);
+		}
+		broadcast.nanosNextSend = nowNanos + broadcast.intervalNanos();
+		if(size == heap.length){
+			heap = Arrays.copyOf(heap, size * 2);
+		}
+		heap[size] = broadcast;
+		broadcast.heapIndex = size;
+		size++;
+		siftUp(size - 1);
+	}
+
+	public void schedule(MISBroadcast broadcast){
+		schedule(broadcast, System.nanoTime());
+	}
+
+	public boolean cancel(MISBroadcast broadcast){
+		int index = broadcast.heapIndex;
+		if(index < 0 || index >= size || heap[index] != broadcast){
+			return false;
+		}
+		size--;
+		MISBroadcast last = heap[size];
+		heap[size] = null;
+		broadcast.heapIndex = -1;
+		if(index != size){
+			heap[index] = last;
+			last.heapIndex = index;
+			siftDown(index);
+			siftUp(last.heapIndex);
+		}
+		return true;
+	}
+
+	/**
+	 * Collects every broadcast due at nowNanos and schedules its next send.
+	 * The next send keeps the original cadence, intervals that were missed
+	 * completely are skipped instead of fired in a burst.
+	 * @param nowNanos
+	 * @param due receives the due broadcasts, it is not cleared
+	 * @return number of due broadcasts
+	 */
+	public int poll(long nowNanos, ArrayList<MISBroadcast> due){
+		int count = 0;
+		while(size > 0 && heap[0].nanosNextSend - nowNanos <= 0){
+			MISBroadcast broadcast = heap[0];
+			long interval = broadcast.intervalNanos();
+			long next = broadcast.nanosNextSend + interval;
+			if(next - nowNanos <= 0){
+				next += ((nowNanos - next) / interval + 1) * interval;
+			}
+			broadcast.nanosNextSend = next;
+			broadcast.markSent();
+			siftDown(0);
+			due.add(broadcast);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return nanoTime of the next send, or Long.MAX_VALUE when nothing is scheduled
+	 */
+	public long nextSendNanos(){
+		return size > 0 ? heap[0].nanosNextSend : Long.MAX_VALUE;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	private void siftUp(int index){
+		MISBroadcast broadcast = heap[index];
+		while(index > 0){
+			int parent = (index - 1) >>> 1;
+			if(heap[parent].nanosNextSend - broadcast.nanosNextSend <= 0){
+				break;
+			}
+			heap[index] = heap[parent];
+			heap[index].heapIndex = index;
+			index = parent;
+		}
+		heap[index] = broadcast;
+		broadcast.heapIndex = index;
+	}
+
+	private void siftDown(int index){
+		MISBroadcast broadcast = heap[index];
+		int half = size >>> 1;
+		while(index < half){
+			int child = 2 * index + 1;
+			int right = child + 1;
+			if(right < size && heap[right].nanosNextSend - heap[child].nanosNextSend < 0){
+				child = right;
+			}
+			if(broadcast.nanosNextSend - heap[child].nanosNextSend <= 0){
+				break;
+			}
+			heap[index] = heap[child];
+			heap[index].heapIndex = index;
+			index = child;
+		}
+		heap[index] = broadcast;
+		broadcast.heapIndex = index;
+	}
+
+}
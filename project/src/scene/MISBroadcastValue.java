@@ -1,16 +1,20 @@
 package scene;
 
-public class MISBroadcastValue extends MISBroadcast{
+import data_types.MISString;
+import data_types.MISVariable;
+
+/**
+ * Sends the changed numeric and boolean variables of the scene
+ */
+public class MISBroadcastValue extends MISDeltaBroadcast{
 
 	public MISBroadcastValue(float secondsPerSend) {
 		super(secondsPerSend);
-		// TODO Auto-generated constructor stub
 	}
 
 	@Override
-	public String dataToSend() {
-		// TODO Auto-generated method stub
-		return null;
+	protected boolean includes(MISVariable variable) {
+		return !(variable instanceof MISString);
 	}
 
 }
@@ -6,6 +6,8 @@ public class MISBroastcastMessage extends MISBroadcast{
 	
 	public MISBroastcastMessage(float secondsPerSend, String message) {
 		super(secondsPerSend);
+		//Text messages must arrive, they go on the reliable channel
+		reliable = true;
 		this.message = message;
 	}
 	
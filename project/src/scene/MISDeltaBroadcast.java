@@ -0,0 +1,234 @@
+package scene;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import connector.MISClient;
+import connector.MISConnector;
+import connector.MISDropListener;
+import data_types.MISNode;
+import data_types.MISPackage;
+import data_types.MISScene;
+import data_types.MISVariable;
+
+/**
+ * Broadcast of the scenes variables that only sends what changed since its last send,
+ * read from the scene journal. Clients that joined since then, or every client when the
+ * journal no longer reaches back far enough, get the full state in a TYPE_STATE packet.
+ * Both packets are encoded once for all their receivers without a view. Clients with a
+ * view in the scenes MISSpatialGrid only get the variables of the nodes they see and of
+ * the whole scene, with every variable of a node that came into view since the last send.
+ * Clients count as synced once their packet was queued, or offered to their bandwidth
+ * budget until it reports the packet dropped.
+ */
+public abstract class MISDeltaBroadcast extends MISBroadcast implements MISDropListener{
+
+	//Journal tick of the last send, -1 before the first
+	private long sentTick = -1;
+	//Clients that got the full state, only touched by the server loop
+	private final HashSet<MISClient> synced;
+	//Nodes each client with a view saw at the last send
+	private HashMap<MISClient, HashSet<MISNode>> seen;
+	private HashMap<MISClient, HashSet<MISNode>> views;
+	private final ArrayList<MISVariable> changed;
+	private final ArrayList<MISClient> current;
+	private final ArrayList<MISClient> fresh;
+	//Clients the last packets were queued for
+	private final ArrayList<MISClient> reached;
+	private final ArrayList<MISNode> visible;
+	private final ArrayList<MISClient> single;
+	//Variables per node, built once per send when a client needs them
+	private final HashMap<MISNode, ArrayList<MISVariable>> nodeVariables;
+	private boolean nodeVariablesBuilt;
+	private final ArrayList<MISVariable> none;
+
+	public MISDeltaBroadcast(float secondsPerSend) {
+		super(secondsPerSend);
+		//A lost delta would leave the client behind until its next full state
+		reliable = true;
+		synced = new HashSet<MISClient>();
+		seen = new HashMap<MISClient, HashSet<MISNode>>();
+		views = new HashMap<MISClient, HashSet<MISNode>>();
+		changed = new ArrayList<MISVariable>();
+		current = new ArrayList<MISClient>();
+		fresh = new ArrayList<MISClient>();
+		reached = new ArrayList<MISClient>();
+		visible = new ArrayList<MISNode>();
+		single = new ArrayList<MISClient>(1);
+		nodeVariables = new HashMap<MISNode, ArrayList<MISVariable>>();
+		none = new ArrayList<MISVariable>(0);
+	}
+
+	/**
+	 * @param variable
+	 * @return true when the variable is part of this broadcast
+	 */
+	protected abstract boolean includes(MISVariable variable);
+
+	/**
+	 * A packet waiting in the clients bandwidth budget was rejected, the client gets the full state next time
+	 */
+	@Override
+	public void frameDropped(MISClient client){
+		synced.remove(client);
+	}
+
+	@Override
+	public String dataToSend() {
+		return null;
+	}
+
+	@Override
+	public int send(MISScene scene) {
+		current.clear();
+		fresh.clear();
+		reached.clear();
+		views.clear();
+		nodeVariables.clear();
+		nodeVariablesBuilt = false;
+		for(MISClient client : receivers(scene)){
+			visible.clear();
+			boolean viewing = scene.grid.query(client, visible) >= 0;
+			if(viewing){
+				views.put(client, new HashSet<MISNode>(visible));
+			}
+			//A delta still waiting for bandwidth would be replaced, the full state replaces it instead.
+			//A client that lost its view sees nodes it was never sent, so it gets the full state too.
+			if(synced.contains(client) && !client.budget.isPending(this) && (viewing || !seen.containsKey(client))){
+				current.add(client);
+			} else {
+				fresh.add(client);
+			}
+		}
+		changed.clear();
+		if(sentTick < 0 || !scene.journal.changesSince(sentTick, changed)){
+			fresh.addAll(current);
+			current.clear();
+		}
+		int sent = 0;
+		if(!current.isEmpty()){
+			MISPackage delta = null;
+			for(int i = current.size() - 1; i >= 0; i--){
+				MISClient client = current.get(i);
+				if(views.containsKey(client)){
+					current.remove(i);
+					sent += sendDelta(scene, client, views.get(client), seen.get(client));
+				}
+			}
+			for(int i = 0; i < changed.size() && !current.isEmpty(); i++){
+				if(includes(changed.get(i))){
+					if(delta == null){
+						delta = packet(MISPackage.TYPE_BROADCAST);
+					}
+					delta.addVariable(changed.get(i));
+				}
+			}
+			if(delta != null){
+				sent += MISConnector.broadcast(current, delta, this, priority, origin, reached);
+			} else {
+				reached.addAll(current);
+			}
+		}
+		if(!fresh.isEmpty()){
+			for(int i = fresh.size() - 1; i >= 0; i--){
+				MISClient client = fresh.get(i);
+				if(views.containsKey(client)){
+					fresh.remove(i);
+					sent += sendState(scene, client, views.get(client));
+				}
+			}
+			if(!fresh.isEmpty()){
+				MISPackage state = packet(MISPackage.TYPE_STATE);
+				for(MISVariable variable : scene.variables.getList()){
+					if(includes(variable)){
+						state.addVariable(variable);
+					}
+				}
+				sent += MISConnector.broadcast(fresh, state, this, priority, origin, reached);
+			}
+		}
+		//Clients that left the scene or whose packet was dropped get the full state next time
+		synced.clear();
+		synced.addAll(reached);
+		HashMap<MISClient, HashSet<MISNode>> previous = seen;
+		seen = views;
+		views = previous;
+		sentTick = scene.journal.getTick();
+		return sent;
+	}
+
+	/**
+	 * Sends a client with a view the changes it sees and the variables of nodes that came into view
+	 * @param before nodes seen at the last send, null when the client had no view and saw all
+	 * @return 1 when sent, 0 otherwise
+	 */
+	private int sendDelta(MISScene scene, MISClient client, HashSet<MISNode> nodes, HashSet<MISNode> before){
+		MISPackage delta = packet(MISPackage.TYPE_BROADCAST);
+		for(int i = 0; i < changed.size(); i++){
+			MISVariable variable = changed.get(i);
+			MISNode node = variable.node;
+			//Variables of nodes coming into view are all added below
+			if(includes(variable) && (node == null || (nodes.contains(node) && (before == null || before.contains(node))))){
+				delta.addVariable(variable);
+			}
+		}
+		for(MISNode node : nodes){
+			if(before != null && !before.contains(node)){
+				for(MISVariable variable : variablesOf(scene, node)){
+					if(includes(variable)){
+						delta.addVariable(variable);
+					}
+				}
+			}
+		}
+		if(delta.fields.isEmpty()){
+			reached.add(client);
+			return 0;
+		}
+		single.clear();
+		single.add(client);
+		return MISConnector.broadcast(single, delta, this, priority, origin, reached);
+	}
+
+	/**
+	 * Sends a client with a view the variables of the scene and of the nodes it sees
+	 * @return 1 when sent, 0 otherwise
+	 */
+	private int sendState(MISScene scene, MISClient client, HashSet<MISNode> nodes){
+		MISPackage state = packet(MISPackage.TYPE_STATE);
+		for(MISVariable variable : scene.variables.getList()){
+			if(includes(variable) && (variable.node == null || nodes.contains(variable.node))){
+				state.addVariable(variable);
+			}
+		}
+		single.clear();
+		single.add(client);
+		return MISConnector.broadcast(single, state, this, priority, origin, reached);
+	}
+
+	private ArrayList<MISVariable> variablesOf(MISScene scene, MISNode node){
+		if(!nodeVariablesBuilt){
+			nodeVariablesBuilt = true;
+			for(MISVariable variable : scene.variables.getList()){
+				if(variable.node != null){
+					ArrayList<MISVariable> variables = nodeVariables.get(variable.node);
+					if(variables == null){
+						variables = new ArrayList<MISVariable>(2);
+						nodeVariables.put(variable.node, variables);
+					}
+					variables.add(variable);
+				}
+			}
+		}
+		ArrayList<MISVariable> variables = nodeVariables.get(node);
+		return variables != null ? variables : none;
+	}
+
+	private MISPackage packet(int type){
+		MISPackage packet = new MISPackage(type);
+		packet.reliable = reliable;
+		return packet;
+	}
+
+}
@@ -0,0 +1,338 @@
+package scene;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import connector.MISPackageCodec;
+import data_types.MIS3DPosition;
+import data_types.MISBoolean;
+import data_types.MISInteger;
+import data_types.MISLong;
+import data_types.MISNode;
+import data_types.MISPackage;
+import data_types.MISPosition;
+import data_types.MISScene;
+import data_types.MISString;
+import data_types.MISVariable;
+
+/**
+ * Copy of the state of a scene at one tick: its variables ordered by key id
+ * and the positions of its nodes ordered by node id. Every snapshot gets an id
+ * that is unique across scenes, clients acknowledge snapshots by it.
+ * Encoded as the difference to an older snapshot, the payload is
+ * [varint TYPE_SNAPSHOT][varlong id][varlong tick][varlong baseline id + 1, 0 for none]
+ * [varint changed variables]([varint key id][tag][value])...
+ * [varint removed variables]([varint key id])...
+ * [varint changed nodes]([varint node id][tag][coordinates])...
+ * [varint removed nodes]([varint node id])...
+ * with the field tags and value encoding of MISPackageCodec. Nodes that were
+ * removed, lost their position or left the view of the client since the baseline
+ * are removed nodes.
+ */
+public class MISSnapshot {
+
+	private static final Comparator<MISVariable> KEY_ORDER = new Comparator<MISVariable>() {
+		@Override
+		public int compare(MISVariable a, MISVariable b) {
+			return Integer.compare(a.getKeyId(), b.getKeyId());
+		}
+	};
+
+	private static final Comparator<MISNode> ID_ORDER = new Comparator<MISNode>() {
+		@Override
+		public int compare(MISNode a, MISNode b) {
+			return Integer.compare(a.id, b.id);
+		}
+	};
+
+	private static final AtomicLong ids = new AtomicLong();
+
+	public final long id;
+	public final long tick;
+	int variableCount;
+	int[] keys;
+	byte[] tags;
+	long[] numbers;
+	String[] strings;
+	//Nodes with a position, ordered by node id
+	int nodeCount;
+	int[] nodeIds;
+	byte[] nodeTags;
+	int[] xs;
+	int[] ys;
+	int[] zs;
+
+	private MISSnapshot(long tick){
+		this.id = ids.incrementAndGet();
+		this.tick = tick;
+	}
+
+	/**
+	 * @return id of the newest snapshot taken, later snapshots have higher ids
+	 */
+	public static long lastId(){
+		return ids.get();
+	}
+
+	/**
+	 * @param scene
+	 * @param tick
+	 * @return a snapshot of the current values of the scene
+	 */
+	public static MISSnapshot capture(MISScene scene, long tick){
+		MISSnapshot snapshot = new MISSnapshot(tick);
+		List<MISVariable> variables = new ArrayList<MISVariable>(scene.variables.getList());
+		Collections.sort(variables, KEY_ORDER);
+		int count = variables.size();
+		snapshot.variableCount = count;
+		snapshot.keys = new int[count];
+		snapshot.tags = new byte[count];
+		snapshot.numbers = new long[count];
+		snapshot.strings = new String[count];
+		for(int i = 0; i < count; i++){
+			MISVariable variable = variables.get(i);
+			snapshot.keys[i] = variable.getKeyId();
+			if(variable instanceof MISInteger){
+				snapshot.tags[i] = MISPackageCodec.FIELD_INTEGER;
+				snapshot.numbers[i] = ((MISInteger) variable).getValue();
+			} else if(variable instanceof MISLong){
+				snapshot.tags[i] = MISPackageCodec.FIELD_LONG;
+				snapshot.numbers[i] = ((MISLong) variable).getValue();
+			} else if(variable instanceof MISBoolean){
+				snapshot.tags[i] = ((MISBoolean) variable).getValue() ? MISPackageCodec.FIELD_TRUE : MISPackageCodec.FIELD_FALSE;
+			} else if(variable instanceof MISString){
+				snapshot.tags[i] = MISPackageCodec.FIELD_STRING;
+				String value = ((MISString) variable).getValue();
+				snapshot.strings[i] = value != null ? value : "";
+			}
+		}
+		List<MISNode> nodes = new ArrayList<MISNode>();
+		boolean ordered = true;
+		for(MISNode node : scene.nodeList){
+			if(node.position != null){
+				ordered &= nodes.isEmpty() || nodes.get(nodes.size() - 1).id < node.id;
+				nodes.add(node);
+			}
+		}
+		if(!ordered){
+			Collections.sort(nodes, ID_ORDER);
+		}
+		count = nodes.size();
+		snapshot.nodeCount = count;
+		snapshot.nodeIds = new int[count];
+		snapshot.nodeTags = new byte[count];
+		snapshot.xs = new int[count];
+		snapshot.ys = new int[count];
+		snapshot.zs = new int[count];
+		for(int i = 0; i < count; i++){
+			MISNode node = nodes.get(i);
+			//Read once, the position may be replaced while the snapshot is taken
+			MISPosition position = node.position;
+			snapshot.nodeIds[i] = node.id;
+			if(position == null){
+				continue;
+			}
+			snapshot.nodeTags[i] = position instanceof MIS3DPosition ? MISPackageCodec.FIELD_3D_POSITION : MISPackageCodec.FIELD_POSITION;
+			snapshot.xs[i] = position.x;
+			snapshot.ys[i] = position.y;
+			if(position instanceof MIS3DPosition){
+				snapshot.zs[i] = ((MIS3DPosition) position).z;
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @param nodes the nodes a client sees, for example from MISSpatialGrid.query
+	 * @return sorted ids of those nodes that have a position in this snapshot, for encodeDelta
+	 */
+	public int[] visibleNodes(Collection<MISNode> nodes){
+		int[] ids = new int[nodes.size()];
+		int count = 0;
+		for(MISNode node : nodes){
+			ids[count++] = node.id;
+		}
+		Arrays.sort(ids, 0, count);
+		int kept = 0;
+		for(int k = 0; k < count; k++){
+			int n = Arrays.binarySearch(nodeIds, 0, nodeCount, ids[k]);
+			if(n >= 0 && nodeTags[n] != 0){
+				ids[kept++] = ids[k];
+			}
+		}
+		return Arrays.copyOf(ids, kept);
+	}
+
+	/**
+	 * Encodes the fields that differ from the baseline, or every field without one
+	 * @param baseline older snapshot of the same scene the client acknowledged, or null
+	 * @return the flipped payload, to be sent as a MISPackage
+	 */
+	public ByteBuffer encodeDelta(MISSnapshot baseline){
+		return encodeDelta(baseline, null, null);
+	}
+
+	/**
+	 * Like encodeDelta, for a client that only sees some nodes
+	 * @param baseline older snapshot of the same scene the client acknowledged, or null
+	 * @param baselineNodes the nodes the client was sent with the baseline, null for all
+	 * @param nodes the nodes the client sees now from visibleNodes, null for all
+	 * @return the flipped payload, to be sent as a MISPackage
+	 */
+	public ByteBuffer encodeDelta(MISSnapshot baseline, int[] baselineNodes, int[] nodes){
+		int[] changed = new int[variableCount];
+		int[] removed = new int[baseline != null ? baseline.variableCount : 0];
+		int changedCount = 0;
+		int removedCount = 0;
+		int i = 0;
+		int j = 0;
+		//Both sides are ordered by key id
+		while(i < variableCount || (baseline != null && j < baseline.variableCount)){
+			if(baseline == null || j == baseline.variableCount || (i < variableCount && keys[i] < baseline.keys[j])){
+				changed[changedCount++] = i++;
+			} else if(i == variableCount || baseline.keys[j] < keys[i]){
+				removed[removedCount++] = baseline.keys[j++];
+			} else {
+				if(!sameVariable(i, baseline, j)){
+					changed[changedCount++] = i;
+				}
+				i++;
+				j++;
+			}
+		}
+		int[] current = places(nodes);
+		int[] previous = baseline != null ? baseline.places(baselineNodes) : new int[0];
+		int[] changedNodes = new int[current.length];
+		int[] removedNodes = new int[previous.length];
+		int changedNodeCount = 0;
+		int removedNodeCount = 0;
+		i = 0;
+		j = 0;
+		//Both sides are ordered by node id
+		while(i < current.length || j < previous.length){
+			if(j == previous.length || (i < current.length && nodeIds[current[i]] < baseline.nodeIds[previous[j]])){
+				changedNodes[changedNodeCount++] = current[i++];
+			} else if(i == current.length || baseline.nodeIds[previous[j]] < nodeIds[current[i]]){
+				removedNodes[removedNodeCount++] = baseline.nodeIds[previous[j++]];
+			} else {
+				if(!sameNode(current[i], baseline, previous[j])){
+					changedNodes[changedNodeCount++] = current[i];
+				}
+				i++;
+				j++;
+			}
+		}
+
+		long baselineId = baseline != null ? baseline.id + 1 : 0;
+		int size = MISPackageCodec.varIntSize(MISPackage.TYPE_SNAPSHOT) + MISPackageCodec.varLongSize(id)
+				+ MISPackageCodec.varLongSize(tick) + MISPackageCodec.varLongSize(baselineId)
+				+ MISPackageCodec.varIntSize(changedCount) + MISPackageCodec.varIntSize(removedCount)
+				+ MISPackageCodec.varIntSize(changedNodeCount) + MISPackageCodec.varIntSize(removedNodeCount);
+		for(int c = 0; c < changedCount; c++){
+			size += MISPackageCodec.varIntSize(keys[changed[c]]) + 1 + valueSize(changed[c]);
+		}
+		for(int r = 0; r < removedCount; r++){
+			size += MISPackageCodec.varIntSize(removed[r]);
+		}
+		for(int c = 0; c < changedNodeCount; c++){
+			int n = changedNodes[c];
+			size += MISPackageCodec.varIntSize(nodeIds[n]) + 1 + MISPackageCodec.varIntSize(MISPackageCodec.zigzag(xs[n]))
+					+ MISPackageCodec.varIntSize(MISPackageCodec.zigzag(ys[n]));
+			if(nodeTags[n] == MISPackageCodec.FIELD_3D_POSITION){
+				size += MISPackageCodec.varIntSize(MISPackageCodec.zigzag(zs[n]));
+			}
+		}
+		for(int r = 0; r < removedNodeCount; r++){
+			size += MISPackageCodec.varIntSize(removedNodes[r]);
+		}
+
+		ByteBuffer out = ByteBuffer.allocate(size);
+		MISPackageCodec.writeVarInt(out, MISPackage.TYPE_SNAPSHOT);
+		MISPackageCodec.writeVarLong(out, id);
+		MISPackageCodec.writeVarLong(out, tick);
+		MISPackageCodec.writeVarLong(out, baselineId);
+		MISPackageCodec.writeVarInt(out, changedCount);
+		for(int c = 0; c < changedCount; c++){
+			int v = changed[c];
+			MISPackageCodec.writeVarInt(out, keys[v]);
+			out.put(tags[v]);
+			if(tags[v] == MISPackageCodec.FIELD_INTEGER){
+				MISPackageCodec.writeVarInt(out, MISPackageCodec.zigzag((int) numbers[v]));
+			} else if(tags[v] == MISPackageCodec.FIELD_LONG){
+				MISPackageCodec.writeVarLong(out, MISPackageCodec.zigzag(numbers[v]));
+			} else if(tags[v] == MISPackageCodec.FIELD_STRING){
+				MISPackageCodec.writeString(out, strings[v]);
+			}
+		}
+		MISPackageCodec.writeVarInt(out, removedCount);
+		for(int r = 0; r < removedCount; r++){
+			MISPackageCodec.writeVarInt(out, removed[r]);
+		}
+		MISPackageCodec.writeVarInt(out, changedNodeCount);
+		for(int c = 0; c < changedNodeCount; c++){
+			int n = changedNodes[c];
+			MISPackageCodec.writeVarInt(out, nodeIds[n]);
+			out.put(nodeTags[n]);
+			MISPackageCodec.writeVarInt(out, MISPackageCodec.zigzag(xs[n]));
+			MISPackageCodec.writeVarInt(out, MISPackageCodec.zigzag(ys[n]));
+			if(nodeTags[n] == MISPackageCodec.FIELD_3D_POSITION){
+				MISPackageCodec.writeVarInt(out, MISPackageCodec.zigzag(zs[n]));
+			}
+		}
+		MISPackageCodec.writeVarInt(out, removedNodeCount);
+		for(int r = 0; r < removedNodeCount; r++){
+			MISPackageCodec.writeVarInt(out, removedNodes[r]);
+		}
+		out.flip();
+		return out;
+	}
+
+	/**
+	 * Places of the given nodes in this snapshot, only the ones that have a position here
+	 * @param ids sorted node ids, null for every node
+	 */
+	private int[] places(int[] ids){
+		int[] places = new int[ids != null ? ids.length : nodeCount];
+		int count = 0;
+		for(int k = 0; k < places.length; k++){
+			int n = ids != null ? Arrays.binarySearch(nodeIds, 0, nodeCount, ids[k]) : k;
+			//A node without tag lost its position while the snapshot was taken
+			if(n >= 0 && nodeTags[n] != 0){
+				places[count++] = n;
+			}
+		}
+		return count == places.length ? places : Arrays.copyOf(places, count);
+	}
+
+	private boolean sameVariable(int i, MISSnapshot other, int j){
+		if(tags[i] != other.tags[j]){
+			return false;
+		}
+		if(tags[i] == MISPackageCodec.FIELD_STRING){
+			return strings[i].equals(other.strings[j]);
+		}
+		return numbers[i] == other.numbers[j];
+	}
+
+	private boolean sameNode(int n, MISSnapshot other, int m){
+		return nodeTags[n] == other.nodeTags[m] && xs[n] == other.xs[m] && ys[n] == other.ys[m] && zs[n] == other.zs[m];
+	}
+
+	private int valueSize(int v){
+		if(tags[v] == MISPackageCodec.FIELD_INTEGER){
+			return MISPackageCodec.varIntSize(MISPackageCodec.zigzag((int) numbers[v]));
+		} else if(tags[v] == MISPackageCodec.FIELD_LONG){
+			return MISPackageCodec.varLongSize(MISPackageCodec.zigzag(numbers[v]));
+		} else if(tags[v] == MISPackageCodec.FIELD_STRING){
+			return MISPackageCodec.stringSize(strings[v]);
+		}
+		return 0;
+	}
+
+}
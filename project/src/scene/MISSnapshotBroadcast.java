@@ -0,0 +1,112 @@
+package scene;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import connector.MISClient;
+import connector.MISConnector;
+import data_types.MISNode;
+import data_types.MISPackage;
+import data_types.MISScene;
+
+/**
+ * Sends snapshots of the scene, each diffed against the newest snapshot the client
+ * acknowledged with TYPE_SNAPSHOT_ACK. Snapshot ids are unique across scenes and
+ * broadcasts, so an ack only ever selects a snapshot of this broadcast. The last HISTORY_SIZE snapshots are kept so every
+ * client can have its own baseline, clients whose baseline is gone get the full snapshot.
+ * One delta is encoded per distinct baseline and shared by the clients on it, clients
+ * with a view in the scenes MISSpatialGrid get their own delta of the nodes they see.
+ * Meant for one snapshot broadcast per scene, over UDP a delta must fit in a datagram.
+ */
+public class MISSnapshotBroadcast extends MISBroadcast{
+
+	public static final int HISTORY_SIZE = 32;
+
+	private final MISSnapshot[] history;
+	//Per history slot the nodes each client with a view was sent, clients without a view got all
+	private final ArrayList<HashMap<MISClient, int[]>> sentNodes;
+	private long taken;
+	//Receivers per baseline, the last one for clients without
+	private final ArrayList<ArrayList<MISClient>> groups;
+	private final ArrayList<MISNode> visible;
+	private final ArrayList<MISClient> single;
+
+	public MISSnapshotBroadcast(float secondsPerSend) {
+		super(secondsPerSend);
+		history = new MISSnapshot[HISTORY_SIZE];
+		sentNodes = new ArrayList<HashMap<MISClient, int[]>>();
+		groups = new ArrayList<ArrayList<MISClient>>();
+		for(int i = 0; i <= HISTORY_SIZE; i++){
+			groups.add(new ArrayList<MISClient>());
+			if(i < HISTORY_SIZE){
+				sentNodes.add(new HashMap<MISClient, int[]>());
+			}
+		}
+		visible = new ArrayList<MISNode>();
+		single = new ArrayList<MISClient>(1);
+	}
+
+	@Override
+	public String dataToSend() {
+		return null;
+	}
+
+	@Override
+	public int send(MISScene scene) {
+		long tick = scene.journal.getTick();
+		//A second snapshot of a tick would take the slot of the first, whose id clients may already ack
+		if(taken > 0 && history[(int)((taken - 1) % HISTORY_SIZE)].tick == tick){
+			return 0;
+		}
+		MISSnapshot snapshot = MISSnapshot.capture(scene, tick);
+		HashMap<MISClient, int[]> sent = new HashMap<MISClient, int[]>();
+		int count = 0;
+		for(MISClient client : receivers(scene)){
+			int index = baselineIndex(client.ackedSnapshot);
+			visible.clear();
+			if(scene.grid.query(client, visible) < 0){
+				groups.get(index).add(client);
+				continue;
+			}
+			//Clients with a view get their own delta of the nodes they see
+			MISSnapshot baseline = index < HISTORY_SIZE ? history[index] : null;
+			int[] baselineNodes = baseline != null ? sentNodes.get(index).get(client) : null;
+			int[] nodes = snapshot.visibleNodes(visible);
+			single.clear();
+			single.add(client);
+			if(MISConnector.broadcast(single, new MISPackage(snapshot.encodeDelta(baseline, baselineNodes, nodes)), this, priority, origin) > 0){
+				sent.put(client, nodes);
+				count++;
+			}
+		}
+		for(int i = 0; i <= HISTORY_SIZE; i++){
+			ArrayList<MISClient> group = groups.get(i);
+			if(!group.isEmpty()){
+				MISSnapshot baseline = i < HISTORY_SIZE ? history[i] : null;
+				count += MISConnector.broadcast(group, new MISPackage(snapshot.encodeDelta(baseline)), this, priority, origin);
+				group.clear();
+			}
+		}
+		int slot = (int)(taken % HISTORY_SIZE);
+		taken++;
+		history[slot] = snapshot;
+		sentNodes.set(slot, sent);
+		return count;
+	}
+
+	/**
+	 * @param id of the snapshot acknowledged by the client, -1 for none
+	 * @return slot of the snapshot in the history or HISTORY_SIZE when it is not kept
+	 */
+	private int baselineIndex(long id){
+		if(id >= 0){
+			for(int i = 0; i < HISTORY_SIZE; i++){
+				if(history[i] != null && history[i].id == id){
+					return i;
+				}
+			}
+		}
+		return HISTORY_SIZE;
+	}
+
+}
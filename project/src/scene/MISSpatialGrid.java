@@ -0,0 +1,345 @@
+package scene;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import connector.MISClient;
+import data_types.MIS3DPosition;
+import data_types.MISNode;
+import data_types.MISPosition;
+import data_types.MISScene;
+import helpers.MISIntMap;
+
+/**
+ * Area of interest for the clients of a scene. Every client with a view position is
+ * listed in the uniform grid cells its view radius touches, so finding the clients that
+ * see a position costs one cell lookup and a distance check per client in that cell,
+ * independent of the total number of clients. Nodes with a position are listed in the
+ * one cell they are in, so finding the nodes a client sees only visits the cells of its view.
+ * Positions without z are at z = 0 and a 2D view only covers that layer.
+ * Cells are found by a hash of their coordinates, colliding cells share a list,
+ * which the distance check makes harmless.
+ * Moves are queued from any thread and applied by the thread ticking the scene.
+ */
+public class MISSpatialGrid {
+
+	public static final int STANDARD_CELL_SIZE = 64;
+	//Clients whose view covers more cells are checked on every query instead
+	private static final int MAX_CELLS_PER_CLIENT = 512;
+
+	private final int cellSize;
+	private final MISIntMap<ArrayList<MISClient>> cells;
+	private final HashMap<MISClient, Area> areas;
+	private final ArrayList<MISClient> everywhere;
+	private final ConcurrentLinkedQueue<MISClient> moved;
+	private final MISIntMap<ArrayList<MISNode>> nodeCells;
+	//Position each node is listed with
+	private final HashMap<MISNode, MISPosition> nodePositions;
+	private final ConcurrentLinkedQueue<MISNode> movedNodes;
+
+	public MISSpatialGrid(){
+		this(STANDARD_CELL_SIZE);
+	}
+
+	public MISSpatialGrid(int cellSize){
+		this.cellSize = cellSize;
+		cells = new MISIntMap<ArrayList<MISClient>>();
+		areas = new HashMap<MISClient, Area>();
+		everywhere = new ArrayList<MISClient>();
+		moved = new ConcurrentLinkedQueue<MISClient>();
+		nodeCells = new MISIntMap<ArrayList<MISNode>>();
+		nodePositions = new HashMap<MISNode, MISPosition>();
+		movedNodes = new ConcurrentLinkedQueue<MISNode>();
+	}
+
+	/**
+	 * Queues the client to be placed again after its view, scene or connection changed
+	 * @param client
+	 */
+	public void move(MISClient client){
+		moved.add(client);
+	}
+
+	/**
+	 * Queues the node to be placed again after its position changed or it was added to or removed from the scene
+	 * @param node
+	 */
+	public void move(MISNode node){
+		movedNodes.add(node);
+	}
+
+	/**
+	 * Applies the queued moves, clients that are no longer in the scene or have no view
+	 * and nodes that are no longer in the scene or have no position are removed
+	 * @param scene the scene this grid belongs to
+	 */
+	public void applyMoves(MISScene scene){
+		MISClient client;
+		while((client = moved.poll()) != null){
+			MISPosition view = client.viewPosition;
+			if(view == null || client.scene != scene || !scene.clients.contains(client)){
+				remove(client);
+			} else {
+				place(client, view, client.viewRadius);
+			}
+		}
+		MISNode node;
+		while((node = movedNodes.poll()) != null){
+			MISPosition position = node.position;
+			if(position == null || !scene.containsNode(node)){
+				remove(node);
+			} else {
+				place(node, position);
+			}
+		}
+	}
+
+	/**
+	 * Adds the clients that have the position within their view radius
+	 * @param position
+	 * @param out
+	 * @return number of clients added
+	 */
+	public int query(MISPosition position, Collection<MISClient> out){
+		int x = position.x;
+		int y = position.y;
+		int z = position instanceof MIS3DPosition ? ((MIS3DPosition) position).z : 0;
+		int added = 0;
+		ArrayList<MISClient> cell = cells.get(cellKey(cell(x), cell(y), cell(z)));
+		if(cell != null){
+			for(int i = 0; i < cell.size(); i++){
+				if(sees(areas.get(cell.get(i)), x, y, z)){
+					out.add(cell.get(i));
+					added++;
+				}
+			}
+		}
+		for(int i = 0; i < everywhere.size(); i++){
+			if(sees(areas.get(everywhere.get(i)), x, y, z)){
+				out.add(everywhere.get(i));
+				added++;
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * Adds the nodes within the view radius of the client, as they were placed by the last applyMoves
+	 * @param client
+	 * @param out
+	 * @return number of nodes added, -1 when the client has no view and sees everything
+	 */
+	public int query(MISClient client, Collection<MISNode> out){
+		Area area = areas.get(client);
+		if(area == null){
+			return -1;
+		}
+		int added = 0;
+		if(area.cellCount() > MAX_CELLS_PER_CLIENT || area.cellCount() > nodeCells.size()){
+			//Fewer occupied cells than covered ones, checking every node is cheaper
+			for(Map.Entry<MISNode, MISPosition> entry : nodePositions.entrySet()){
+				if(sees(area, entry.getValue())){
+					out.add(entry.getKey());
+					added++;
+				}
+			}
+			return added;
+		}
+		for(int cx = area.minX; cx <= area.maxX; cx++){
+			for(int cy = area.minY; cy <= area.maxY; cy++){
+				for(int cz = area.minZ; cz <= area.maxZ; cz++){
+					ArrayList<MISNode> cell = nodeCells.get(cellKey(cx, cy, cz));
+					if(cell == null){
+						continue;
+					}
+					for(int i = 0; i < cell.size(); i++){
+						MISNode node = cell.get(i);
+						MISPosition position = nodePositions.get(node);
+						//Colliding cells share a list, only take a node in the cell it is in
+						if(cellOf(position, cx, cy, cz) && sees(area, position)){
+							out.add(node);
+							added++;
+						}
+					}
+				}
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * @return number of clients with a view
+	 */
+	public int size(){
+		return areas.size();
+	}
+
+	/**
+	 * @return number of nodes with a position
+	 */
+	public int nodeCount(){
+		return nodePositions.size();
+	}
+
+	private void place(MISNode node, MISPosition position){
+		MISPosition previous = nodePositions.put(node, position);
+		if(previous != null){
+			if(cellKey(previous) == cellKey(position)){
+				return;
+			}
+			removeFromCell(node, previous);
+		}
+		int key = cellKey(position);
+		ArrayList<MISNode> cell = nodeCells.get(key);
+		if(cell == null){
+			cell = new ArrayList<MISNode>(4);
+			nodeCells.put(key, cell);
+		}
+		cell.add(node);
+	}
+
+	private void remove(MISNode node){
+		MISPosition previous = nodePositions.remove(node);
+		if(previous != null){
+			removeFromCell(node, previous);
+		}
+	}
+
+	private void removeFromCell(MISNode node, MISPosition position){
+		int key = cellKey(position);
+		ArrayList<MISNode> cell = nodeCells.get(key);
+		if(cell != null && cell.remove(node) && cell.isEmpty()){
+			nodeCells.remove(key);
+		}
+	}
+
+	private void place(MISClient client, MISPosition view, int radius){
+		Area area = new Area(view, Math.max(0, radius));
+		Area previous = areas.get(client);
+		if(previous != null && previous.sameCells(area)){
+			areas.put(client, area);
+			return;
+		}
+		remove(client);
+		areas.put(client, area);
+		if(area.cellCount() > MAX_CELLS_PER_CLIENT){
+			everywhere.add(client);
+			return;
+		}
+		for(int cx = area.minX; cx <= area.maxX; cx++){
+			for(int cy = area.minY; cy <= area.maxY; cy++){
+				for(int cz = area.minZ; cz <= area.maxZ; cz++){
+					int key = cellKey(cx, cy, cz);
+					ArrayList<MISClient> cell = cells.get(key);
+					if(cell == null){
+						cell = new ArrayList<MISClient>(4);
+						cells.put(key, cell);
+					}
+					//Colliding cells share a list, keep the client in it once
+					if(!cell.contains(client)){
+						cell.add(client);
+					}
+				}
+			}
+		}
+	}
+
+	private void remove(MISClient client){
+		Area area = areas.remove(client);
+		if(area == null){
+			return;
+		}
+		if(area.cellCount() > MAX_CELLS_PER_CLIENT){
+			everywhere.remove(client);
+			return;
+		}
+		for(int cx = area.minX; cx <= area.maxX; cx++){
+			for(int cy = area.minY; cy <= area.maxY; cy++){
+				for(int cz = area.minZ; cz <= area.maxZ; cz++){
+					int key = cellKey(cx, cy, cz);
+					ArrayList<MISClient> cell = cells.get(key);
+					if(cell != null && cell.remove(client) && cell.isEmpty()){
+						cells.remove(key);
+					}
+				}
+			}
+		}
+	}
+
+	private static boolean sees(Area area, MISPosition position){
+		return sees(area, position.x, position.y, position instanceof MIS3DPosition ? ((MIS3DPosition) position).z : 0);
+	}
+
+	private static boolean sees(Area area, int x, int y, int z){
+		long dx = (long) x - area.x;
+		long dy = (long) y - area.y;
+		long dz = (long) z - area.z;
+		//Squares of distances across the whole int range overflow a long
+		if(Math.abs(dx) > area.radius || Math.abs(dy) > area.radius || Math.abs(dz) > area.radius){
+			return false;
+		}
+		return dx * dx + dy * dy + dz * dz <= (long) area.radius * area.radius;
+	}
+
+	private int cell(int coordinate){
+		return Math.floorDiv(coordinate, cellSize);
+	}
+
+	/**
+	 * Cell of a coordinate computed beyond the int range, like a view position plus its radius
+	 */
+	private int cell(long coordinate){
+		return cell((int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, coordinate)));
+	}
+
+	private int cellKey(MISPosition position){
+		int z = position instanceof MIS3DPosition ? ((MIS3DPosition) position).z : 0;
+		return cellKey(cell(position.x), cell(position.y), cell(z));
+	}
+
+	private boolean cellOf(MISPosition position, int cx, int cy, int cz){
+		int z = position instanceof MIS3DPosition ? ((MIS3DPosition) position).z : 0;
+		return cell(position.x) == cx && cell(position.y) == cy && cell(z) == cz;
+	}
+
+	private static int cellKey(int cx, int cy, int cz){
+		return (cx * 73856093) ^ (cy * 19349663) ^ (cz * 83492791);
+	}
+
+	/**
+	 * View of a client and the cells it covers
+	 */
+	private class Area {
+
+		final int x, y, z, radius;
+		final int minX, maxX, minY, maxY, minZ, maxZ;
+
+		Area(MISPosition view, int radius){
+			x = view.x;
+			y = view.y;
+			z = view instanceof MIS3DPosition ? ((MIS3DPosition) view).z : 0;
+			this.radius = radius;
+			minX = cell((long) x - radius);
+			maxX = cell((long) x + radius);
+			minY = cell((long) y - radius);
+			maxY = cell((long) y + radius);
+			boolean flat = !(view instanceof MIS3DPosition);
+			minZ = flat ? 0 : cell((long) z - radius);
+			maxZ = flat ? 0 : cell((long) z + radius);
+		}
+
+		long cellCount(){
+			return ((long) maxX - minX + 1) * ((long) maxY - minY + 1) * ((long) maxZ - minZ + 1);
+		}
+
+		boolean sameCells(Area other){
+			return minX == other.minX && maxX == other.maxX && minY == other.minY
+					&& maxY == other.maxY && minZ == other.minZ && maxZ == other.maxZ;
+		}
+
+	}
+
+}
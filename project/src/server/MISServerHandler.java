@@ -0,0 +1,112 @@
+package server;
+
+import java.nio.ByteBuffer;
+
+import connector.MISClient;
+import connector.MISConnector;
+import connector.MISPackageCodec;
+import connector.MISPacketHandler;
+import connector.MISTimeoutWheel;
+import data_types.MISInteger;
+import data_types.MISLong;
+import data_types.MISPackage;
+import data_types.MISPosition;
+import data_types.MISScene;
+import data_types.MISSymbolTable;
+import project.MISProject;
+import scene.MISSnapshot;
+
+/**
+ * Puts clients into scenes. New clients get the symbol table, join the first scene
+ * of the project and move with a TYPE_JOIN_SCENE packet holding the scene id.
+ * Clients announce keys the server does not know yet with a TYPE_SYMBOLS packet.
+ */
+public class MISServerHandler implements MISPacketHandler {
+
+	//Keys one client may add to the symbol table
+	public static final int MAX_SYMBOLS_PER_CLIENT = 256;
+	//Size of the symbol table beyond which clients can not add keys
+	public static final int MAX_ANNOUNCED_SYMBOLS = 65536;
+	//Largest view radius a client may ask for, larger ones are cut down to it
+	public static final int MAX_VIEW_RADIUS = 65536;
+
+	private final MISProject project;
+	private final MISTimeoutWheel timeouts;
+
+	public MISServerHandler(MISProject project, MISTimeoutWheel timeouts){
+		this.project = project;
+		this.timeouts = timeouts;
+	}
+
+	@Override
+	public void clientConnected(MISClient client) {
+		timeouts.add(client);
+		MISConnector.sendSymbols(client);
+		if(project.scenes.size() > 0){
+			join(client, project.scenes.get(0));
+		}
+	}
+
+	@Override
+	public void packetReceived(MISClient client, ByteBuffer data) {
+		int start = data.position();
+		if(MISPackageCodec.readVarInt(data) == MISPackage.TYPE_SYMBOLS){
+			//Keys beyond the limits are ignored, packets using them fail to decode
+			client.announcedSymbols += MISPackageCodec.readSymbols(data, MISSymbolTable.SYMBOLS,
+					MAX_SYMBOLS_PER_CLIENT - client.announcedSymbols, MAX_ANNOUNCED_SYMBOLS);
+			//Answer with every key the client has not seen, including the ones of other clients
+			MISConnector.sendSymbols(client);
+			return;
+		}
+		data.position(start);
+		MISPackage packet = MISPackageCodec.decode(data);
+		if(packet.type == MISPackage.TYPE_JOIN_SCENE && packet.fields.size() > 0 && packet.fields.get(0) instanceof MISInteger){
+			int id = ((MISInteger) packet.fields.get(0)).getValue();
+			for(MISScene scene : project.scenes){
+				if(scene.IDNumber == id){
+					join(client, scene);
+					break;
+				}
+			}
+		} else if(packet.type == MISPackage.TYPE_SNAPSHOT_ACK && packet.fields.size() > 0 && packet.fields.get(0) instanceof MISLong){
+			long id = ((MISLong) packet.fields.get(0)).getValue();
+			//Acks arriving late from the previous scene name snapshots taken before the join
+			if(id > client.joinedSnapshot && id > client.ackedSnapshot){
+				client.ackedSnapshot = id;
+			}
+		} else if(packet.type == MISPackage.TYPE_VIEW && packet.fields.size() > 1 && packet.fields.get(0) instanceof MISPosition
+				&& packet.fields.get(1) instanceof MISInteger){
+			client.viewRadius = Math.max(0, Math.min(MAX_VIEW_RADIUS, ((MISInteger) packet.fields.get(1)).getValue()));
+			client.viewPosition = (MISPosition) packet.fields.get(0);
+			MISScene scene = client.scene;
+			if(scene != null){
+				scene.grid.move(client);
+			}
+		}
+	}
+
+	@Override
+	public void clientDisconnected(MISClient client) {
+		timeouts.remove(client);
+		MISScene scene = client.scene;
+		if(scene != null){
+			scene.clients.remove(client);
+			scene.grid.move(client);
+		}
+	}
+
+	private void join(MISClient client, MISScene scene){
+		MISScene previous = client.scene;
+		if(previous != null){
+			previous.clients.remove(client);
+			previous.grid.move(client);
+		}
+		client.scene = scene;
+		//Snapshots of the old scene are no baseline for the new one
+		client.joinedSnapshot = MISSnapshot.lastId();
+		client.ackedSnapshot = -1;
+		scene.clients.add(client);
+		scene.grid.move(client);
+	}
+
+}
@@ -0,0 +1,154 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+import connector.MISClient;
+import connector.MISConnector;
+import connector.MISTimeoutWheel;
+import data_types.MISScene;
+import project.MISProject;
+import scene.MISBroadcast;
+import settings.MISGeneralSettings;
+
+/**
+ * Headless fixed timestep loop ticking every scene of the project at refreshRate Hz.
+ * Tick start times are derived from the first tick, so sleeping inaccuracies do not
+ * add up. An overrun tick is followed by the next one right away until the loop is
+ * back on schedule, or, beyond MAX_CATCH_UP_TICKS, the missed ticks are skipped.
+ */
+public class MISServerLoop implements Runnable {
+
+	public static final int MAX_CATCH_UP_TICKS = 5;
+	//With spinning on, the last part of every wait is spent spinning instead of parking
+	public static final long SPIN_NANOS = 1000000L;
+	public static final int METRICS_INTERVAL_SECONDS = 10;
+
+	private final MISProject project;
+	private final ArrayList<MISConnector> connectors;
+	private final MISTickMetrics metrics;
+	private final ArrayList<MISBroadcast> due;
+	private final MISTimeoutWheel timeouts;
+	private final ArrayList<MISClient> expired;
+	private final long periodNanos;
+	private boolean spin;
+	private volatile boolean running;
+	private long tick;
+
+	public MISServerLoop(MISProject project){
+		this.project = project;
+		int refreshRate = project.refreshRate > 0 ? project.refreshRate : MISGeneralSettings.STANDARD_REFRESH_RATE;
+		periodNanos = 1000000000L / refreshRate;
+		connectors = MISConnector.createConnectors(project);
+		int timeout = project.timeOutDuration > 0 ? project.timeOutDuration : MISGeneralSettings.STANDARD_TIMEOUT;
+		timeouts = new MISTimeoutWheel(timeout);
+		expired = new ArrayList<MISClient>();
+		MISServerHandler handler = new MISServerHandler(project, timeouts);
+		for(MISConnector connector : connectors){
+			connector.setPacketHandler(handler);
+			//Frames of a tick leave together in flush
+			connector.setCoalescing(true);
+		}
+		metrics = new MISTickMetrics();
+		due = new ArrayList<MISBroadcast>();
+	}
+
+	public void setSpin(boolean spin){
+		this.spin = spin;
+	}
+
+	public MISTickMetrics getMetrics(){
+		return metrics;
+	}
+
+	public ArrayList<MISConnector> getConnectors(){
+		return connectors;
+	}
+
+	public long getTick(){
+		return tick;
+	}
+
+	public void stop(){
+		running = false;
+	}
+
+	@Override
+	public void run() {
+		running = true;
+		project.setServing(true);
+		for(MISConnector connector : connectors){
+			if(!connector.start()){
+				System.out.println("Could not open port "+connector.getPort());
+			}
+		}
+		long ticksPerReport = Math.max(1, METRICS_INTERVAL_SECONDS * 1000000000L / periodNanos);
+		long next = System.nanoTime();
+		while(running){
+			waitUntil(next);
+			long start = System.nanoTime();
+			metrics.recordStart(start - next);
+			tick(start);
+			long end = System.nanoTime();
+			metrics.recordTick(end - start);
+			next += periodNanos;
+			if(end - next > 0){
+				metrics.overruns++;
+				long behind = (end - next) / periodNanos;
+				if(behind >= MAX_CATCH_UP_TICKS){
+					metrics.skippedTicks += behind;
+					next += behind * periodNanos;
+				}
+			}
+			if(metrics.ticks % ticksPerReport == 0){
+				metrics.recordOutbound(connectors);
+				System.out.println(metrics);
+			}
+		}
+		for(MISConnector connector : connectors){
+			connector.stop();
+		}
+		project.setServing(false);
+	}
+
+	/**
+	 * Runs one simulation step of every scene
+	 * @param nowNanos
+	 */
+	private void tick(long nowNanos){
+		tick++;
+		expired.clear();
+		timeouts.advance(nowNanos, expired);
+		for(int i = 0; i < expired.size(); i++){
+			expired.get(i).connector.drop(expired.get(i));
+		}
+		for(MISScene scene : project.scenes){
+			scene.journal.setTick(tick);
+			scene.grid.applyMoves(scene);
+			due.clear();
+			scene.scheduler.poll(nowNanos, due);
+			for(int i = 0; i < due.size(); i++){
+				scene.sendBroadcast(due.get(i));
+			}
+		}
+		for(int i = 0; i < connectors.size(); i++){
+			connectors.get(i).packBudgets(periodNanos);
+			connectors.get(i).flush();
+		}
+	}
+
+	private void waitUntil(long deadline){
+		while(true){
+			long remaining = deadline - System.nanoTime();
+			if(remaining <= 0){
+				return;
+			}
+			if(!spin){
+				LockSupport.parkNanos(remaining);
+			} else if(remaining > SPIN_NANOS){
+				LockSupport.parkNanos(remaining - SPIN_NANOS);
+			}
+		}
+	}
+
+}
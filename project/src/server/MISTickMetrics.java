@@ -0,0 +1,74 @@
+package server;
+
+import java.util.List;
+
+import connector.MISConnector;
+
+/**
+ * Timing statistics of a MISServerLoop. Written by the loop thread only,
+ * other threads may read slightly stale values.
+ */
+public class MISTickMetrics {
+
+	public volatile long ticks;
+	//Ticks that ended after the next tick should have started
+	public volatile long overruns;
+	//Ticks dropped because the loop fell too far behind to catch up
+	public volatile long skippedTicks;
+	public volatile long lastTickNanos;
+	public volatile long maxTickNanos;
+	public volatile double averageTickNanos;
+	//How late ticks start compared to their schedule
+	public volatile double averageJitterNanos;
+	public volatile long maxJitterNanos;
+	//Outbound queues of all connectors, sampled when the metrics are reported
+	public volatile long outboundDepth;
+	public volatile int maxOutboundDepth;
+	public volatile long droppedFrames;
+
+	private static final double SMOOTHING = 0.05;
+
+	void recordStart(long lateNanos){
+		if(lateNanos > maxJitterNanos){
+			maxJitterNanos = lateNanos;
+		}
+		averageJitterNanos += (lateNanos - averageJitterNanos) * SMOOTHING;
+	}
+
+	void recordTick(long durationNanos){
+		ticks++;
+		lastTickNanos = durationNanos;
+		if(durationNanos > maxTickNanos){
+			maxTickNanos = durationNanos;
+		}
+		averageTickNanos += (durationNanos - averageTickNanos) * SMOOTHING;
+	}
+
+	void recordOutbound(List<MISConnector> connectors){
+		long depth = 0;
+		int max = 0;
+		long dropped = 0;
+		for(int i = 0; i < connectors.size(); i++){
+			MISConnector connector = connectors.get(i);
+			depth += connector.getOutboundDepth();
+			max = Math.max(max, connector.getMaxOutboundDepth());
+			dropped += connector.getDroppedFrames();
+		}
+		outboundDepth = depth;
+		maxOutboundDepth = max;
+		droppedFrames = dropped;
+	}
+
+	@Override
+	public String toString() {
+		return "ticks: "+ticks+", overruns: "+overruns+", skipped: "+skippedTicks
+				+", tick avg/max: "+micros(averageTickNanos)+"/"+micros(maxTickNanos)+"us"
+				+", jitter avg/max: "+micros(averageJitterNanos)+"/"+micros(maxJitterNanos)+"us"
+				+", outbound queued/max/dropped: "+outboundDepth+"/"+maxOutboundDepth+"/"+droppedFrames;
+	}
+
+	private static long micros(double nanos){
+		return (long)(nanos / 1000);
+	}
+
+}
@@ -1,6 +1,8 @@
 package settings;
 
+import enums.MISExecutionMode;
 import enums.MISListType;
+import enums.MISOverflowPolicy;
 import enums.MISProtocol;
 
 public class MISGeneralSettings {
@@ -8,7 +10,12 @@ public class MISGeneralSettings {
 	public static final MISListType STANDARD_LIST_TYPE = MISListType.ARRAY;
 	public static final int STANDARD_MAX_MESSAGES_PER_CLIENT_PER_SECOND = 20;
 	public static final int STANDARD_REFRESH_RATE = 60;
+	//0 sends every broadcast right away
+	public static final int STANDARD_MAX_BYTES_PER_CLIENT_PER_SECOND = 0;
 	public static final int STANDARD_TIMEOUT = 3600;
+	public static final MISExecutionMode STANDARD_EXECUTION_MODE = MISExecutionMode.SELECTOR;
+	public static final int STANDARD_OUTBOUND_QUEUE_SIZE = 1024;
+	public static final MISOverflowPolicy STANDARD_OVERFLOW_POLICY = MISOverflowPolicy.DROP_OLDEST;
 	
 	
 }
@@ -1,14 +1,278 @@
 package tcp;
 
-import java.net.Socket;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class MISTCP {
+import connector.MISClient;
+import connector.MISConnector;
+import connector.MISPooledBuffer;
+import enums.MISExecutionMode;
+import settings.MISGeneralSettings;
 
-	private MISTCPListener listener;
-	private MISTCPSender sender;
-	
-	public MISTCP(){
+/**
+ * TCP connector with two execution modes. In SELECTOR mode a small, fixed number of
+ * MISTCPListener event loops serve every connection on the port. In THREAD_PER_CLIENT
+ * mode every client gets a reader and a writer thread doing blocking calls, these
+ * are virtual threads when the runtime supports them.
+ */
+public class MISTCP extends MISConnector {
+
+	public static final int STANDARD_EVENT_LOOPS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	public static final int INBOUND_BUFFER_SIZE = 16 * 1024;
+
+	private int eventLoops;
+	//Frames per gathering write
+	private int gatherLimit;
+	private MISExecutionMode mode;
+	private ServerSocketChannel server;
+	private MISTCPListener[] listeners;
+	private int nextListener;
+	private ExecutorService clientThreads;
+	private MISTCPSender blockingSender;
+	private volatile boolean running;
+
+	public MISTCP(int port){
+		this(port, MISGeneralSettings.STANDARD_EXECUTION_MODE);
+	}
+
+	public MISTCP(int port, MISExecutionMode mode){
+		this(port, mode, STANDARD_EVENT_LOOPS);
+	}
+
+	public MISTCP(int port, MISExecutionMode mode, int eventLoops){
+		this(port, mode, eventLoops, MISTCPSender.MAX_GATHER);
+	}
+
+	/**
+	 * @param port
+	 * @param mode
+	 * @param eventLoops
+	 * @param gatherLimit frames per write call, at most MISTCPSender.MAX_GATHER, 1 writes frame by frame
+	 */
+	public MISTCP(int port, MISExecutionMode mode, int eventLoops, int gatherLimit){
+		super(port);
+		this.mode = mode;
+		this.eventLoops = eventLoops;
+		this.gatherLimit = gatherLimit;
+	}
+
+	@Override
+	public synchronized boolean start() {
+		if(running){
+			return false;
+		}
+		if(mode == MISExecutionMode.THREAD_PER_CLIENT){
+			return startBlocking();
+		}
+		try {
+			server = ServerSocketChannel.open();
+			server.configureBlocking(false);
+			server.socket().setReuseAddress(true);
+			server.bind(new InetSocketAddress(port), 1024);
+			listeners = new MISTCPListener[eventLoops];
+			for(int i = 0; i < eventLoops; i++){
+				listeners[i] = new MISTCPListener(this);
+			}
+			listeners[0].registerServer(server);
+			for(int i = 0; i < eventLoops; i++){
+				Thread thread = new Thread(listeners[i], "MIS-TCP-"+port+"-"+i);
+				thread.setDaemon(true);
+				thread.start();
+			}
+			running = true;
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	private boolean startBlocking(){
+		try {
+			server = ServerSocketChannel.open();
+			server.socket().setReuseAddress(true);
+			server.bind(new InetSocketAddress(port), 1024);
+			clientThreads = newClientExecutor();
+			blockingSender = new MISTCPSender(gatherLimit);
+			running = true;
+			Thread acceptor = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					acceptBlocking();
+				}
+			}, "MIS-TCP-"+port+"-accept");
+			acceptor.setDaemon(true);
+			acceptor.start();
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	private void acceptBlocking(){
+		while(running){
+			try {
+				SocketChannel channel = server.accept();
+				channel.socket().setTcpNoDelay(true);
+				final MISTCPClient client = new MISTCPClient(this, channel, null);
+				clientConnected(client);
+				clientThreads.execute(new Runnable() {
+					@Override
+					public void run() {
+						MISTCPListener.readBlocking(MISTCP.this, client);
+					}
+				});
+				clientThreads.execute(new Runnable() {
+					@Override
+					public void run() {
+						blockingSender.writeBlocking(client);
+					}
+				});
+			} catch (IOException e) {
+				if(running){
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Closes a client of the thread per client mode, called by its reader
+	 * @param client
+	 */
+	void closeBlocking(MISTCPClient client){
+		try {
+			client.channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		MISTCPSender.scheduleWrite(client);
+		if(client.inboundBuffer != null){
+			client.inboundBuffer.release();
+			client.inboundBuffer = null;
+		}
+		clientDisconnected(client);
+	}
+
+	/**
+	 * Virtual threads need Java 21, older runtimes get a cached pool of platform threads
+	 * @return executor starting a thread per task
+	 */
+	private static ExecutorService newClientExecutor(){
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
 	}
-	
-	
+
+	@Override
+	public synchronized boolean stop() {
+		if(!running){
+			return false;
+		}
+		running = false;
+		if(mode == MISExecutionMode.THREAD_PER_CLIENT){
+			drop();
+			clientThreads.shutdown();
+		} else {
+			for(MISTCPListener listener : listeners){
+				listener.shutdown();
+			}
+		}
+		try {
+			server.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return true;
+	}
+
+	@Override
+	public boolean drop() {
+		for(MISClient client : clients.values()){
+			drop(client);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean drop(MISClient client) {
+		if(!(client instanceof MISTCPClient)){
+			return false;
+		}
+		MISTCPClient tcpClient = (MISTCPClient) client;
+		if(tcpClient.listener == null){
+			//Closing the channel ends the blocking reader, which cleans up
+			try {
+				tcpClient.channel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		} else {
+			tcpClient.listener.scheduleClose(tcpClient);
+		}
+		return true;
+	}
+
+	@Override
+	protected boolean enqueue(MISClient client, MISPooledBuffer frame){
+		if(!(client instanceof MISTCPClient) || !((MISTCPClient) client).channel.isOpen()){
+			frame.release();
+			return false;
+		}
+		MISTCPClient tcpClient = (MISTCPClient) client;
+		if(!tcpClient.queue(frame)){
+			return false;
+		}
+		queued(tcpClient);
+		return true;
+	}
+
+	@Override
+	protected void scheduleWrite(MISClient client){
+		MISTCPClient tcpClient = (MISTCPClient) client;
+		if(tcpClient.listener == null){
+			MISTCPSender.scheduleWrite(tcpClient);
+		} else {
+			tcpClient.listener.scheduleWrite(tcpClient);
+		}
+	}
+
+	public MISExecutionMode getExecutionMode(){
+		return mode;
+	}
+
+	public int getGatherLimit(){
+		return gatherLimit;
+	}
+
+	MISTCPListener nextListener(){
+		MISTCPListener listener = listeners[nextListener];
+		nextListener = (nextListener + 1) % listeners.length;
+		return listener;
+	}
+
+	/**
+	 * Sum of socket write calls over every event loop
+	 * @return number of writes
+	 */
+	public long getWriteCount(){
+		if(mode == MISExecutionMode.THREAD_PER_CLIENT){
+			return blockingSender.blockingWrites.get();
+		}
+		long writes = 0;
+		for(MISTCPListener listener : listeners){
+			writes += listener.getSender().writes;
+		}
+		return writes;
+	}
+
 }
@@ -0,0 +1,62 @@
+package tcp;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import connector.MISBufferPool;
+import connector.MISClient;
+import connector.MISPooledBuffer;
+
+public class MISTCPClient extends MISClient {
+
+	public final SocketChannel channel;
+	//The event loop owning the channel, every read/write happens on its thread.
+	//null in the thread per client mode.
+	public final MISTCPListener listener;
+	//The thread writing the outbound queue in the thread per client mode
+	public volatile Thread writer;
+	public SelectionKey key;
+	//Borrowed from the buffer pool for the lifetime of the connection
+	public MISPooledBuffer inboundBuffer;
+	public ByteBuffer inbound;
+	//Frames of the current gathering write, only used by the writing thread
+	MISPooledBuffer[] gathered;
+	ByteBuffer[] gatherBuffers;
+	int gatherStart;
+	int gatherEnd;
+
+	public MISTCPClient(MISTCP connector, SocketChannel channel, MISTCPListener listener) {
+		super(connector, channel.socket().getRemoteSocketAddress());
+		this.channel = channel;
+		this.listener = listener;
+		inboundBuffer = MISBufferPool.POOL.acquire(MISTCP.INBOUND_BUFFER_SIZE);
+		inbound = inboundBuffer.buffer;
+	}
+
+	/**
+	 * Gives the clients buffers back to the pool, called once the channel is closed
+	 */
+	void releaseBuffers(){
+		if(inboundBuffer != null){
+			inboundBuffer.release();
+			inboundBuffer = null;
+			inbound = null;
+		}
+		releaseGathered();
+		releaseOutbound();
+	}
+
+	/**
+	 * Releases the frames of an unfinished gathering write
+	 */
+	void releaseGathered(){
+		while(gatherStart < gatherEnd){
+			gathered[gatherStart].release();
+			gathered[gatherStart] = null;
+			gatherBuffers[gatherStart] = null;
+			gatherStart++;
+		}
+	}
+
+}
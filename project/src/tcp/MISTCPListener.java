@@ -1,5 +1,244 @@
 package tcp;
 
-public class MISTCPListener {
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import connector.MISPacketHandler;
+
+/**
+ * One event loop of a MISTCP connector. Every loop owns a selector and
+ * a share of the connections, so no connection ever gets its own thread.
+ */
+public class MISTCPListener implements Runnable {
+
+	private final MISTCP connector;
+	private final Selector selector;
+	private final MISTCPSender sender;
+	private final ConcurrentLinkedQueue<SocketChannel> pendingChannels;
+	private final ConcurrentLinkedQueue<MISTCPClient> pendingWrites;
+	private final ConcurrentLinkedQueue<MISTCPClient> pendingCloses;
+	private volatile boolean running;
+
+	public MISTCPListener(MISTCP connector) throws IOException {
+		this.connector = connector;
+		selector = Selector.open();
+		sender = new MISTCPSender(connector.getGatherLimit());
+		pendingChannels = new ConcurrentLinkedQueue<SocketChannel>();
+		pendingWrites = new ConcurrentLinkedQueue<MISTCPClient>();
+		pendingCloses = new ConcurrentLinkedQueue<MISTCPClient>();
+		running = true;
+	}
+
+	public void registerServer(ServerSocketChannel server) throws IOException{
+		server.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+	/**
+	 * Hands a freshly accepted channel over to this loop
+	 * @param channel
+	 */
+	public void register(SocketChannel channel){
+		pendingChannels.add(channel);
+		selector.wakeup();
+	}
+
+	/**
+	 * Asks the loop to flush the clients outbound queue
+	 * @param client
+	 */
+	public void scheduleWrite(MISTCPClient client){
+		if(client.writePending.compareAndSet(false, true)){
+			pendingWrites.add(client);
+			selector.wakeup();
+		}
+	}
+
+	public void scheduleClose(MISTCPClient client){
+		pendingCloses.add(client);
+		selector.wakeup();
+	}
+
+	public void shutdown(){
+		running = false;
+		selector.wakeup();
+	}
+
+	public MISTCPSender getSender(){
+		return sender;
+	}
+
+	@Override
+	public void run() {
+		while(running){
+			try {
+				selector.select();
+				runPending();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext()){
+					SelectionKey key = keys.next();
+					keys.remove();
+					if(!key.isValid()){
+						continue;
+					}
+					if(key.isAcceptable()){
+						accept((ServerSocketChannel) key.channel());
+						continue;
+					}
+					MISTCPClient client = (MISTCPClient) key.attachment();
+					try {
+						if(key.isReadable()){
+							read(client);
+						}
+						if(key.isValid() && key.isWritable()){
+							if(sender.write(client)){
+								key.interestOps(SelectionKey.OP_READ);
+							}
+						}
+					} catch (IOException e) {
+						close(client);
+					} catch (RuntimeException e) {
+						e.printStackTrace();
+						close(client);
+					}
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		for(SelectionKey key : selector.keys()){
+			if(key.attachment() instanceof MISTCPClient){
+				close((MISTCPClient) key.attachment());
+			}
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void runPending(){
+		SocketChannel channel;
+		while((channel = pendingChannels.poll()) != null){
+			MISTCPClient client = new MISTCPClient(connector, channel, this);
+			try {
+				client.key = channel.register(selector, SelectionKey.OP_READ, client);
+				connector.clientConnected(client);
+			} catch (IOException e) {
+				close(client);
+			}
+		}
+		MISTCPClient client;
+		while((client = pendingCloses.poll()) != null){
+			close(client);
+		}
+		while((client = pendingWrites.poll()) != null){
+			client.writePending.set(false);
+			if(client.key == null || !client.key.isValid()){
+				continue;
+			}
+			try {
+				if(!sender.write(client)){
+					client.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				}
+			} catch (IOException e) {
+				close(client);
+			}
+		}
+	}
+
+	private void accept(ServerSocketChannel server) throws IOException{
+		SocketChannel channel;
+		while((channel = server.accept()) != null){
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			connector.nextListener().register(channel);
+		}
+	}
+
+	/**
+	 * Reads what is available and passes every complete frame to the handler
+	 */
+	private void read(MISTCPClient client) throws IOException{
+		int read = client.channel.read(client.inbound);
+		if(read < 0 || !dispatchFrames(connector, client)){
+			close(client);
+		}
+	}
+
+	/**
+	 * Reads frames on a blocking channel until the client disconnects.
+	 * Used by the thread per client execution mode.
+	 * @param connector
+	 * @param client
+	 */
+	public static void readBlocking(MISTCP connector, MISTCPClient client){
+		try {
+			while(client.channel.read(client.inbound) >= 0){
+				if(!dispatchFrames(connector, client)){
+					break;
+				}
+			}
+		} catch (IOException e) {
+			//The channel was closed or reset, which ends the client
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		}
+		connector.closeBlocking(client);
+	}
+
+	/**
+	 * Passes every complete frame in the clients inbound buffer to the handler.
+	 * A frame is a 4 byte length followed by that many bytes of payload.
+	 * @return false when the stream holds an invalid frame
+	 */
+	private static boolean dispatchFrames(MISTCP connector, MISTCPClient client){
+		ByteBuffer in = client.inbound;
+		in.flip();
+		MISPacketHandler handler = connector.getPacketHandler();
+		long now = System.nanoTime();
+		client.touch(now);
+		while(in.remaining() >= 4){
+			int start = in.position();
+			int length = in.getInt(start);
+			if(length < 0 || length > in.capacity() - 4){
+				return false;
+			}
+			if(in.remaining() < length + 4){
+				break;
+			}
+			int end = start + 4 + length;
+			int limit = in.limit();
+			in.position(start + 4);
+			in.limit(end);
+			//Frames over the clients budget are skipped before they are decoded
+			if(handler != null && client.rateLimiter.tryAcquire(now)){
+				handler.packetReceived(client, in);
+			}
+			in.limit(limit);
+			in.position(end);
+		}
+		in.compact();
+		return true;
+	}
+
+	private void close(MISTCPClient client){
+		if(client.key != null){
+			client.key.cancel();
+		}
+		try {
+			client.channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		client.releaseBuffers();
+		connector.clientDisconnected(client);
+	}
 
 }
@@ -1,5 +1,132 @@
 package tcp;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import connector.MISPooledBuffer;
+
+/**
+ * Writes the outbound queues of MISTCPClients with gathering writes, up to MAX_GATHER
+ * queued frames go out in one write call and usually in one TCP segment.
+ */
 public class MISTCPSender {
 
+	public static final int MAX_GATHER = 64;
+
+	//Frames per write call, at most MAX_GATHER
+	private final int gatherLimit;
+
+	//Number of write calls made on sockets, used by the benchmarks
+	public long writes;
+	//Writers of the thread per client mode share one sender
+	public final AtomicLong blockingWrites = new AtomicLong();
+
+	public MISTCPSender(){
+		this(MAX_GATHER);
+	}
+
+	/**
+	 * @param gatherLimit frames per write call, 1 writes frame by frame
+	 */
+	public MISTCPSender(int gatherLimit){
+		this.gatherLimit = Math.max(1, Math.min(gatherLimit, MAX_GATHER));
+	}
+
+	/**
+	 * Writes as much of the clients outbound queue as the socket accepts
+	 * @param client
+	 * @return true when the queue was drained, false when the socket is full
+	 * @throws IOException
+	 */
+	public boolean write(MISTCPClient client) throws IOException{
+		while(gather(client)){
+			client.channel.write(client.gatherBuffers, client.gatherStart, client.gatherEnd - client.gatherStart);
+			writes++;
+			if(releaseWritten(client)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the clients outbound queue on a blocking channel, parking while it is empty.
+	 * Used by the thread per client execution mode, returns once the channel closes.
+	 * @param client
+	 */
+	public void writeBlocking(MISTCPClient client){
+		client.writer = Thread.currentThread();
+		try {
+			while(client.channel.isOpen()){
+				client.writePending.set(false);
+				while(gather(client)){
+					client.channel.write(client.gatherBuffers, client.gatherStart, client.gatherEnd - client.gatherStart);
+					blockingWrites.incrementAndGet();
+					releaseWritten(client);
+				}
+				if(!client.writePending.get()){
+					LockSupport.park(this);
+				}
+			}
+		} catch (IOException e) {
+			//The channel was closed or reset, the reader cleans up
+		}
+		client.releaseGathered();
+		client.releaseOutbound();
+	}
+
+	/**
+	 * Takes queued frames into the clients gather arrays once the previous batch is written
+	 * @param client
+	 * @return false when there is nothing to write
+	 */
+	private boolean gather(MISTCPClient client){
+		if(client.gatherStart < client.gatherEnd){
+			return true;
+		}
+		if(client.gathered == null){
+			client.gathered = new MISPooledBuffer[MAX_GATHER];
+			client.gatherBuffers = new ByteBuffer[MAX_GATHER];
+		}
+		client.gatherStart = 0;
+		client.gatherEnd = 0;
+		MISPooledBuffer frame;
+		while(client.gatherEnd < gatherLimit && (frame = client.takeOutbound()) != null){
+			client.gathered[client.gatherEnd] = frame;
+			client.gatherBuffers[client.gatherEnd] = frame.buffer;
+			client.gatherEnd++;
+		}
+		return client.gatherEnd > 0;
+	}
+
+	/**
+	 * Releases the frames of the batch that are completely written
+	 * @param client
+	 * @return true when part of the batch is still unwritten
+	 */
+	private static boolean releaseWritten(MISTCPClient client){
+		while(client.gatherStart < client.gatherEnd && !client.gatherBuffers[client.gatherStart].hasRemaining()){
+			client.gathered[client.gatherStart].release();
+			client.gathered[client.gatherStart] = null;
+			client.gatherBuffers[client.gatherStart] = null;
+			client.gatherStart++;
+		}
+		return client.gatherStart < client.gatherEnd;
+	}
+
+	/**
+	 * Wakes the writer of a client in the thread per client mode
+	 * @param client
+	 */
+	public static void scheduleWrite(MISTCPClient client){
+		if(client.writePending.compareAndSet(false, true)){
+			Thread writer = client.writer;
+			if(writer != null){
+				LockSupport.unpark(writer);
+			}
+		}
+	}
+
 }
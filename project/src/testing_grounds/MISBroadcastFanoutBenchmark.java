@@ -0,0 +1,124 @@
+package testing_grounds;
+
+import java.util.ArrayList;
+
+import connector.MISBufferPool;
+import connector.MISClient;
+import connector.MISConnector;
+import connector.MISPackageCodec;
+import connector.MISPooledBuffer;
+import data_types.MISPackage;
+import data_types.MISScene;
+import scene.MISBroastcastMessage;
+
+/**
+ * Compares the cost of sending one broadcast to many clients when every client
+ * gets its own encoding, its own copy of one encoding, or a slice of one encoding.
+ * The connector only queues the frames, the socket writes are not part of the measurement.
+ * Usage: MISBroadcastFanoutBenchmark [recipients] [payload bytes] [iterations]
+ */
+public class MISBroadcastFanoutBenchmark {
+
+	public static void main(String[] args) {
+		int recipients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int payload = args.length > 1 ? Integer.parseInt(args[1]) : 512;
+		int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+		QueueingConnector connector = new QueueingConnector();
+		MISScene scene = new MISScene(1);
+		ArrayList<MISClient> clients = new ArrayList<MISClient>();
+		for(int i = 0; i < recipients; i++){
+			MISClient client = new MISClient(connector, null);
+			connector.clientConnected(client);
+			scene.clients.add(client);
+			clients.add(client);
+		}
+		StringBuilder message = new StringBuilder();
+		while(message.length() < payload){
+			message.append('x');
+		}
+		MISBroastcastMessage broadcast = new MISBroastcastMessage(0.1f, message.toString());
+		System.out.println(recipients+" recipients, "+payload+" byte payload");
+		for(int round = 0; round < 3; round++){
+			long encodeEach = time(iterations, new Runnable() {
+				public void run() {
+					for(MISClient client : clients){
+						connector.enqueue(client, MISPackageCodec.encodePooled(broadcast.toPackage()));
+					}
+					connector.drain(clients);
+				}
+			});
+			long copyEach = time(iterations, new Runnable() {
+				public void run() {
+					MISPooledBuffer frame = MISPackageCodec.encodePooled(broadcast.toPackage());
+					for(MISClient client : clients){
+						MISPooledBuffer copy = MISBufferPool.POOL.acquire(frame.buffer.remaining());
+						copy.buffer.put(frame.buffer.duplicate());
+						copy.buffer.flip();
+						connector.enqueue(client, copy);
+					}
+					frame.release();
+					connector.drain(clients);
+				}
+			});
+			long slices = time(iterations, new Runnable() {
+				public void run() {
+					scene.sendBroadcast(broadcast);
+					connector.drain(clients);
+				}
+			});
+			System.out.println("encode per client: "+encodeEach+"us, copy per client: "+copyEach
+					+"us, shared slices: "+slices+"us (per broadcast)");
+		}
+	}
+
+	private static long time(int iterations, Runnable runnable){
+		long start = System.nanoTime();
+		for(int i = 0; i < iterations; i++){
+			runnable.run();
+		}
+		return (System.nanoTime() - start) / iterations / 1000;
+	}
+
+	/**
+	 * Connector that only queues, draining stands in for the socket writes
+	 */
+	private static class QueueingConnector extends MISConnector {
+
+		public QueueingConnector() {
+			super(0);
+		}
+
+		@Override
+		protected boolean enqueue(MISClient client, MISPooledBuffer frame) {
+			return client.queue(frame);
+		}
+
+		@Override
+		protected void scheduleWrite(MISClient client) {
+		}
+
+		void drain(ArrayList<MISClient> clients){
+			for(MISClient client : clients){
+				client.releaseOutbound();
+			}
+		}
+
+		public boolean start() {
+			return true;
+		}
+
+		public boolean stop() {
+			return true;
+		}
+
+		public boolean drop() {
+			return true;
+		}
+
+		public boolean drop(MISClient client) {
+			return true;
+		}
+
+	}
+
+}
@@ -0,0 +1,67 @@
+package testing_grounds;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+
+import enums.MISExecutionMode;
+import tcp.MISTCP;
+
+/**
+ * Compares the MISTCP execution modes with many idle clients and fewer chatty ones.
+ * Usage: MISExecutionModeBenchmark [idle clients] [chatty clients] [seconds]
+ */
+public class MISExecutionModeBenchmark {
+
+	private static final int PORT = 47003;
+
+	public static void main(String[] args) throws Exception {
+		int idle = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int chatty = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		int port = PORT;
+		for(MISExecutionMode mode : MISExecutionMode.values()){
+			System.out.println("Mode: "+mode);
+			MISTCP tcp = MISTCPBenchmark.startEchoServer(port, mode);
+			idle(tcp, idle);
+			System.out.println("chatty connections\tmsgs/s\tp50(us)\tp99(us)\tmax(us)");
+			System.out.println(MISTCPBenchmark.run(port, chatty, seconds));
+			tcp.stop();
+			port++;
+			System.out.println();
+		}
+	}
+
+	private static void idle(MISTCP tcp, int count) throws Exception{
+		long heapBefore = usedHeap();
+		int threadsBefore = Thread.activeCount();
+		long cpuBefore = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+		long start = System.nanoTime();
+		SocketChannel[] channels = new SocketChannel[count];
+		for(int i = 0; i < count; i++){
+			channels[i] = SocketChannel.open(new InetSocketAddress("127.0.0.1", tcp.getPort()));
+		}
+		while(tcp.getClientCount() < count){
+			Thread.sleep(10);
+		}
+		long connectMillis = (System.nanoTime() - start) / 1000000;
+		Thread.sleep(1000);
+		System.out.println("idle clients: "+count+", connect time: "+connectMillis+"ms"
+				+", heap: "+((usedHeap() - heapBefore) / 1024)+"KB"
+				+", platform threads: "+(Thread.activeCount() - threadsBefore)
+				+", benchmark cpu: "+((ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime() - cpuBefore) / 1000000)+"ms");
+		for(SocketChannel channel : channels){
+			channel.close();
+		}
+		while(tcp.getClientCount() > 0){
+			Thread.sleep(10);
+		}
+	}
+
+	private static long usedHeap(){
+		System.gc();
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
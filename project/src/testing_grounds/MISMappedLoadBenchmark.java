@@ -0,0 +1,118 @@
+package testing_grounds;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import data_types.MISScene;
+import enums.MISType;
+import loaders.MISLoader;
+import loaders.MISMappedFile;
+import loaders.MISSceneTokenizer;
+import project.MISProject;
+
+/**
+ * Times reading a multi megabyte .tscn file with embedded sub resources through a
+ * stream against reading it memory mapped, and the same for the project.json
+ * saved from it: FileReader against MISMappedFile.openReader, which reads it at once.
+ * Usage: MISMappedLoadBenchmark [nodes] [sub resources] [rounds]
+ */
+public class MISMappedLoadBenchmark {
+
+	private static final int POINTS_PER_RESOURCE = 400;
+
+	public static void main(String[] args) throws IOException, ParseException {
+		int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int resources = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		File directory = new File(System.getProperty("java.io.tmpdir"), "MISMappedLoadBenchmark");
+		directory.mkdirs();
+		File sceneFile = new File(directory, "Level.tscn");
+		writeScene(sceneFile, nodes, resources);
+		MISProject.project = new MISProject("benchmark", directory.getPath(), MISType.Godot);
+		MISProject.project.scenes.add(MISLoader.loadSceneByLocation(sceneFile.getPath()));
+		MISProject.saveProject();
+		File projectFile = new File(directory, "project.json");
+		System.out.println(nodes+" nodes, "+resources+" sub resources, .tscn "+(sceneFile.length() / 1024)
+				+" KB, project.json "+(projectFile.length() / 1024)+" KB, best of "+rounds+" rounds");
+		System.out.println("read\t\t\tms\tresult");
+
+		long streamed = Long.MAX_VALUE;
+		long mapped = Long.MAX_VALUE;
+		int streamedNodes = 0;
+		int mappedNodes = 0;
+		for(int round = 0; round < rounds; round++){
+			long start = System.nanoTime();
+			MISSceneTokenizer tokens = new MISSceneTokenizer(new FileInputStream(sceneFile));
+			streamedNodes = readScene(tokens);
+			tokens.close();
+			streamed = Math.min(streamed, System.nanoTime() - start);
+			start = System.nanoTime();
+			mappedNodes = readScene(new MISSceneTokenizer(MISMappedFile.map(sceneFile)));
+			mapped = Math.min(mapped, System.nanoTime() - start);
+		}
+		System.out.println(".tscn streamed\t\t"+(streamed / 1000000)+"\t"+streamedNodes+" nodes");
+		System.out.println(".tscn mapped\t\t"+(mapped / 1000000)+"\t"+mappedNodes+" nodes");
+
+		streamed = Long.MAX_VALUE;
+		long read = Long.MAX_VALUE;
+		for(int round = 0; round < rounds; round++){
+			long start = System.nanoTime();
+			parseJson(new FileReader(projectFile));
+			streamed = Math.min(streamed, System.nanoTime() - start);
+			start = System.nanoTime();
+			parseJson(MISMappedFile.openReader(projectFile));
+			read = Math.min(read, System.nanoTime() - start);
+		}
+		System.out.println("project.json streamed\t"+(streamed / 1000000));
+		System.out.println("project.json read at once\t"+(read / 1000000));
+		sceneFile.delete();
+		projectFile.delete();
+		directory.delete();
+	}
+
+	private static int readScene(MISSceneTokenizer tokens) throws IOException{
+		MISScene scene = new MISScene(0);
+		MISLoader.readScene(tokens, scene);
+		return scene.nodeList.size();
+	}
+
+	private static void parseJson(Reader reader) throws IOException, ParseException{
+		new JSONParser().parse(reader);
+		reader.close();
+	}
+
+	/**
+	 * A level with collision polygons as sub resources and nodes using them
+	 */
+	private static void writeScene(File file, int nodes, int resources) throws IOException{
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		writer.write("[gd_scene load_steps="+(resources + 2)+" format=2]\n\n");
+		writer.write("[ext_resource path=\"res://scripts/Level.gd\" type=\"Script\" id=1]\n\n");
+		for(int i = 0; i < resources; i++){
+			writer.write("[sub_resource type=\"ConvexPolygonShape2D\" id="+(i + 1)+"]\n\n");
+			writer.write("points = PoolVector2Array( ");
+			for(int p = 0; p < POINTS_PER_RESOURCE; p++){
+				writer.write((p > 0 ? ", " : "")+(i * 31 + p * 7) % 4096+".5, "+(i * 17 + p * 13) % 4096+".25");
+			}
+			writer.write(" )\n\n");
+		}
+		writer.write("[node name=\"Level\" type=\"Node2D\"]\n\n");
+		writer.write("script = ExtResource( 1 )\n\n");
+		for(int i = 0; i < nodes; i++){
+			writer.write("[node name=\"Body"+i+"\" type=\"StaticBody2D\" parent=\".\" index=\""+i+"\"]\n\n");
+			writer.write("position = Vector2( "+(i * 7 % 4096)+", "+(i * 13 % 4096)+" )\n\n");
+			writer.write("[node name=\"Shape\" type=\"CollisionShape2D\" parent=\"Body"+i+"\" index=\"0\"]\n\n");
+			writer.write("shape = SubResource( "+(i % resources + 1)+" )\n\n");
+		}
+		writer.close();
+	}
+
+}
@@ -0,0 +1,190 @@
+package testing_grounds;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import data_types.MISExternalResource;
+import data_types.MISNode;
+import data_types.MISScene;
+import loaders.MISLoader;
+import loaders.MISSceneTokenizer;
+
+/**
+ * Times reading a synthetic .tscn file: the old line parser built on split, contains
+ * and replaceAll against MISSceneTokenizer, both only collecting nodes and resources,
+ * and the full MISLoader.loadSceneByLocation.
+ * Usage: MISSceneLoaderBenchmark [nodes] [rounds]
+ */
+public class MISSceneLoaderBenchmark {
+
+	private static final int GROUPS = 100;
+	private static final int SCRIPTS = 20;
+
+	public static void main(String[] args) throws IOException {
+		int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		File file = File.createTempFile("MISSceneLoaderBenchmark", ".tscn");
+		file.deleteOnExit();
+		writeScene(file, nodes);
+		System.out.println(nodes+" nodes, "+(file.length() / 1024)+" KB, best of "+rounds+" rounds");
+		System.out.println("parser\t\tms\tnodes");
+		long legacy = Long.MAX_VALUE;
+		long tokenizer = Long.MAX_VALUE;
+		int legacyNodes = 0;
+		int tokenizerNodes = 0;
+		for(int round = 0; round < rounds; round++){
+			long start = System.nanoTime();
+			legacyNodes = parseLegacy(file.getPath());
+			legacy = Math.min(legacy, System.nanoTime() - start);
+			start = System.nanoTime();
+			tokenizerNodes = parseTokenizer(file.getPath());
+			tokenizer = Math.min(tokenizer, System.nanoTime() - start);
+		}
+		System.out.println("split\t\t"+(legacy / 1000000)+"\t"+legacyNodes);
+		System.out.println("tokenizer\t"+(tokenizer / 1000000)+"\t"+tokenizerNodes);
+		long start = System.nanoTime();
+		MISScene scene = MISLoader.loadSceneByLocation(file.getPath());
+		System.out.println("full load\t"+((System.nanoTime() - start) / 1000000)+"\t"+scene.nodeList.size());
+	}
+
+	/**
+	 * A root, GROUPS group nodes below it and the rest spread over the groups,
+	 * every node with a few properties and some with a script
+	 */
+	private static void writeScene(File file, int nodes) throws IOException{
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		writer.write("[gd_scene load_steps="+(SCRIPTS + 2)+" format=2]\n\n");
+		writer.write("[ext_resource path=\"res://icon.png\" type=\"Texture\" id=1]\n");
+		for(int i = 0; i < SCRIPTS; i++){
+			writer.write("[ext_resource path=\"res://scripts/Script"+i+".gd\" type=\"Script\" id="+(i + 2)+"]\n");
+		}
+		writer.write("\n[node name=\"Level\" type=\"Node2D\" index=\"0\"]\n\n");
+		for(int i = 0; i < GROUPS; i++){
+			writer.write("[node name=\"Group"+i+"\" type=\"Node2D\" parent=\".\" index=\""+i+"\"]\n\n");
+		}
+		for(int i = 0; i < nodes - GROUPS - 1; i++){
+			writer.write("[node name=\"Sprite"+i+"\" type=\"Sprite\" parent=\"Group"+(i % GROUPS)+"\" index=\""+(i / GROUPS)+"\"]\n\n");
+			writer.write("position = Vector2( "+(i * 7 % 4096)+", "+(i * 13 % 4096)+" )\n");
+			writer.write("scale = Vector2( 1.5, 1.5 )\n");
+			writer.write("texture = ExtResource( 1 )\n");
+			if(i % 10 == 0){
+				writer.write("script = ExtResource( "+(i % SCRIPTS + 2)+" )\n");
+			}
+			writer.write("_sections_unfolded = [ \"Transform\" ]\n\n");
+		}
+		writer.close();
+	}
+
+	/**
+	 * The line parser MISLoader used before MISSceneTokenizer, without the scene building
+	 */
+	private static int parseLegacy(String location) throws IOException{
+		BufferedReader reader = new BufferedReader(new FileReader(location));
+		ArrayList<MISNode> nodes = new ArrayList<MISNode>();
+		ArrayList<MISExternalResource> resources = new ArrayList<MISExternalResource>();
+		String readLine;
+		while((readLine = reader.readLine()) != null){
+			if(readLine.startsWith("[ext_resource")){
+				MISExternalResource externalResource = new MISExternalResource();
+				if(readLine.contains("path=\"")){
+					externalResource.path = readLine.split("path=\"")[1].split("\"")[0];
+					String[] values = externalResource.path.split("/");
+					externalResource.name = values[values.length-1];
+				}
+				if(readLine.contains("type=\"")){
+					externalResource.type = readLine.split("type=\"")[1].split("\"")[0];
+				}
+				if(readLine.contains("id=")){
+					externalResource.id = Integer.parseInt(readLine.split("id=")[1].split("]")[0]);
+				}
+				resources.add(externalResource);
+			} else if(readLine.startsWith("[node")){
+				MISNode node = new MISNode();
+				if(readLine.contains("name=\"")){
+					node.name = readLine.split("name=\"")[1].split("\"")[0];
+				}
+				if(readLine.contains("type=\"")){
+					node.type = readLine.split("type=\"")[1].split("\"")[0];
+				}
+				if(readLine.contains("parent=\"")){
+					String value = readLine.split("parent=\"")[1].split("\"")[0];
+					if(value.contains("/")){
+						String[] parents = value.split("/");
+						value = parents[parents.length-1];
+					}
+				}
+				if(readLine.contains("index=\"")){
+					node.index = Integer.parseInt(readLine.split("index=\"")[1].split("\"")[0]);
+				}
+				nodes.add(node);
+			} else if(readLine.startsWith("script = ExtResource")){
+				readLine = readLine.replaceAll(" ", "");
+				nodes.get(nodes.size() - 1).scriptId = Integer.parseInt(readLine.split("\\(")[1].split("\\)")[0]);
+			}
+		}
+		reader.close();
+		return nodes.size();
+	}
+
+	/**
+	 * The same work on top of MISSceneTokenizer
+	 */
+	private static int parseTokenizer(String location) throws IOException{
+		InputStream in = new FileInputStream(location);
+		MISSceneTokenizer tokens = new MISSceneTokenizer(in);
+		ArrayList<MISNode> nodes = new ArrayList<MISNode>();
+		ArrayList<MISExternalResource> resources = new ArrayList<MISExternalResource>();
+		MISNode node = null;
+		MISExternalResource externalResource = null;
+		int token;
+		while((token = tokens.next()) != MISSceneTokenizer.EOF){
+			if(token == MISSceneTokenizer.SECTION){
+				node = null;
+				externalResource = null;
+				if(tokens.isKey("node")){
+					node = new MISNode();
+					nodes.add(node);
+				} else if(tokens.isKey("ext_resource")){
+					externalResource = new MISExternalResource();
+					resources.add(externalResource);
+				}
+			} else if(token == MISSceneTokenizer.ATTRIBUTE){
+				if(node != null){
+					if(tokens.isKey("name")){
+						node.name = tokens.value();
+					} else if(tokens.isKey("type")){
+						node.type = tokens.value();
+					} else if(tokens.isKey("parent")){
+						String value = tokens.value();
+						value = value.substring(value.lastIndexOf('/') + 1);
+					} else if(tokens.isKey("index")){
+						node.index = tokens.intValue();
+					}
+				} else if(externalResource != null){
+					if(tokens.isKey("path")){
+						externalResource.path = tokens.value();
+						externalResource.name = externalResource.path.substring(externalResource.path.lastIndexOf('/') + 1);
+					} else if(tokens.isKey("type")){
+						externalResource.type = tokens.value();
+					} else if(tokens.isKey("id")){
+						externalResource.id = tokens.intValue();
+					}
+				}
+			} else if(token == MISSceneTokenizer.PROPERTY){
+				if(node != null && tokens.isKey("script") && tokens.valueStartsWith("ExtResource")){
+					node.scriptId = tokens.intValue();
+				}
+			}
+		}
+		in.close();
+		return nodes.size();
+	}
+
+}
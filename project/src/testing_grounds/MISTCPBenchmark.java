@@ -0,0 +1,123 @@
+package testing_grounds;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import connector.MISClient;
+import connector.MISPacketHandler;
+import data_types.MISPackage;
+import enums.MISExecutionMode;
+import tcp.MISTCP;
+
+/**
+ * Echo benchmark for the MISTCP selector engine.
+ * Every simulated client keeps one 8 byte frame in flight and measures the round trip.
+ * Usage: MISTCPBenchmark [seconds per run] [connection counts...]
+ */
+public class MISTCPBenchmark {
+
+	private static final int PORT = 47001;
+
+	public static void main(String[] args) throws Exception {
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int[] counts = new int[]{10, 100, 1000, 5000};
+		if(args.length > 1){
+			counts = new int[args.length - 1];
+			for(int i = 1; i < args.length; i++){
+				counts[i-1] = Integer.parseInt(args[i]);
+			}
+		}
+		MISTCP tcp = startEchoServer(PORT, MISExecutionMode.SELECTOR);
+		System.out.println("connections\tmsgs/s\tp50(us)\tp99(us)\tmax(us)");
+		for(int count : counts){
+			System.out.println(run(PORT, count, seconds));
+		}
+		tcp.stop();
+	}
+
+	public static MISTCP startEchoServer(int port, MISExecutionMode mode){
+		final MISTCP tcp = new MISTCP(port, mode);
+		tcp.setPacketHandler(new MISPacketHandler() {
+			public void clientConnected(MISClient client) {
+			}
+			public void packetReceived(MISClient client, ByteBuffer data) {
+				tcp.sendPacket(new MISPackage(client, data));
+			}
+			public void clientDisconnected(MISClient client) {
+			}
+		});
+		tcp.start();
+		return tcp;
+	}
+
+	/**
+	 * Runs the echo loop with the given number of connections
+	 * @return tab separated result line
+	 */
+	public static String run(int port, int count, int seconds) throws IOException{
+		Selector selector = Selector.open();
+		SocketChannel[] channels = new SocketChannel[count];
+		for(int i = 0; i < count; i++){
+			channels[i] = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+			channels[i].configureBlocking(false);
+			channels[i].socket().setTcpNoDelay(true);
+			channels[i].register(selector, SelectionKey.OP_READ, ByteBuffer.allocate(64));
+		}
+		ByteBuffer out = ByteBuffer.allocate(12);
+		for(SocketChannel channel : channels){
+			sendFrame(channel, out);
+		}
+		long[] latencies = new long[1 << 20];
+		long messages = 0;
+		long end = System.nanoTime() + seconds * 1000000000L;
+		while(System.nanoTime() < end){
+			selector.select(100);
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while(keys.hasNext()){
+				SelectionKey key = keys.next();
+				keys.remove();
+				SocketChannel channel = (SocketChannel) key.channel();
+				ByteBuffer in = (ByteBuffer) key.attachment();
+				channel.read(in);
+				in.flip();
+				while(in.remaining() >= 12){
+					in.getInt();
+					long sent = in.getLong();
+					latencies[(int)(messages & (latencies.length - 1))] = System.nanoTime() - sent;
+					messages++;
+					sendFrame(channel, out);
+				}
+				in.compact();
+			}
+		}
+		for(SocketChannel channel : channels){
+			channel.close();
+		}
+		selector.close();
+		int samples = (int) Math.min(messages, latencies.length);
+		long[] sorted = Arrays.copyOf(latencies, samples);
+		Arrays.sort(sorted);
+		if(samples == 0){
+			return count+"\t0\t-\t-\t-";
+		}
+		return count+"\t"+(messages / seconds)+"\t"+(sorted[samples / 2] / 1000)+"\t"
+				+(sorted[(int)(samples * 0.99)] / 1000)+"\t"+(sorted[samples - 1] / 1000);
+	}
+
+	private static void sendFrame(SocketChannel channel, ByteBuffer out) throws IOException{
+		out.clear();
+		out.putInt(8);
+		out.putLong(System.nanoTime());
+		out.flip();
+		while(out.hasRemaining()){
+			channel.write(out);
+		}
+	}
+
+}
@@ -0,0 +1,132 @@
+package testing_grounds;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+import connector.MISConnector;
+import data_types.MISInteger;
+import data_types.MISPackage;
+import enums.MISExecutionMode;
+import tcp.MISTCP;
+
+/**
+ * Counts socket write calls per tick when several small broadcasts fire in the same tick:
+ * every frame written on its own as soon as it is queued (the old behaviour), queued frames
+ * gathered into one write, and all frames of a tick coalesced into one gathering write per
+ * client at the end of the tick.
+ * Usage: MISWriteCoalescingBenchmark [clients] [broadcasts per tick] [ticks]
+ */
+public class MISWriteCoalescingBenchmark {
+
+	private static final int PORT = 47003;
+	private static final long TICK_NANOS = 1000000000L / 60;
+
+	public static void main(String[] args) throws Exception {
+		int clients = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int broadcasts = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+		//Writes every frame on its own, like before gathering
+		MISTCP single = new MISTCP(PORT + 1, MISExecutionMode.SELECTOR, MISTCP.STANDARD_EVENT_LOOPS, 1);
+		MISTCP tcp = new MISTCP(PORT, MISExecutionMode.SELECTOR);
+		Drain singleDrain = connect(single, clients);
+		Drain drain = connect(tcp, clients);
+		System.out.println(clients+" clients, "+broadcasts+" broadcasts per tick, "+ticks+" ticks");
+		System.out.println("mode\twrites/tick\tframes/tick\tbytes received");
+		System.out.println(run(single, singleDrain, "per frame", false, broadcasts, ticks));
+		System.out.println(run(tcp, drain, "gathered", false, broadcasts, ticks));
+		System.out.println(run(tcp, drain, "coalesced", true, broadcasts, ticks));
+		single.stop();
+		tcp.stop();
+	}
+
+	/**
+	 * Starts the connector and connects the clients to it
+	 */
+	private static Drain connect(MISTCP tcp, int clients) throws Exception{
+		tcp.start();
+		Drain drain = new Drain(tcp.getPort(), clients);
+		Thread drainThread = new Thread(drain, "MIS-Benchmark-Drain-"+tcp.getPort());
+		drainThread.setDaemon(true);
+		drainThread.start();
+		while(tcp.getClientCount() < clients){
+			Thread.sleep(10);
+		}
+		return drain;
+	}
+
+	private static String run(MISTCP tcp, Drain drain, String mode, boolean coalescing, int broadcasts, int ticks) throws InterruptedException{
+		tcp.setCoalescing(coalescing);
+		Thread.sleep(200);
+		long writesBefore = tcp.getWriteCount();
+		long bytesBefore = drain.bytes;
+		long next = System.nanoTime();
+		for(int tick = 0; tick < ticks; tick++){
+			for(int i = 0; i < broadcasts; i++){
+				MISPackage packet = new MISPackage(MISPackage.TYPE_BROADCAST);
+				packet.addVariable(new MISInteger("value", tick * broadcasts + i));
+				MISConnector.broadcast(tcp.getClients(), packet);
+			}
+			if(coalescing){
+				tcp.flush();
+			}
+			next += TICK_NANOS;
+			long sleep = next - System.nanoTime();
+			if(sleep > 0){
+				Thread.sleep(sleep / 1000000, (int)(sleep % 1000000));
+			}
+		}
+		Thread.sleep(200);
+		long writes = tcp.getWriteCount() - writesBefore;
+		long frames = (long) ticks * broadcasts * tcp.getClientCount();
+		return mode+"\t"+(writes / ticks)+"\t\t"+(frames / ticks)+"\t\t"+(drain.bytes - bytesBefore);
+	}
+
+	/**
+	 * Connects the clients and reads everything they receive
+	 */
+	private static class Drain implements Runnable {
+
+		private final Selector selector;
+		volatile long bytes;
+
+		Drain(int port, int clients) throws IOException{
+			selector = Selector.open();
+			for(int i = 0; i < clients; i++){
+				SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+				channel.configureBlocking(false);
+				channel.register(selector, SelectionKey.OP_READ);
+			}
+		}
+
+		@Override
+		public void run() {
+			ByteBuffer in = ByteBuffer.allocateDirect(64 * 1024);
+			try {
+				while(true){
+					selector.select();
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while(keys.hasNext()){
+						SelectionKey key = keys.next();
+						keys.remove();
+						in.clear();
+						int read = ((SocketChannel) key.channel()).read(in);
+						if(read < 0){
+							key.cancel();
+						} else {
+							bytes += read;
+						}
+					}
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+	}
+
+}
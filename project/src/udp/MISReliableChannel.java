@@ -0,0 +1,322 @@
+package udp;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import connector.MISBufferPool;
+import connector.MISPooledBuffer;
+import helpers.MISIntMap;
+
+/**
+ * Reliability state of one UDP session. Every datagram starts with the header
+ * [u16 sequence][u16 ack][u32 ack bits], where ack is the newest datagram received
+ * from the other side and bit n of ack bits stands for datagram ack - 1 - n.
+ * The frames that follow are prefixed with their channel:
+ * [UNRELIABLE][frame] is handled as it arrives and never resent,
+ * [RELIABLE][u16 message id][frame] is resent every RESEND_NANOS until a datagram
+ * carrying it is acked, and handled in message id order. A session whose oldest message
+ * is not acked within ACK_TIMEOUT_NANOS of its first send is expired.
+ * Only used by the listener thread.
+ */
+public class MISReliableChannel {
+
+	public static final int HEADER_SIZE = 8;
+	public static final byte UNRELIABLE = 0;
+	public static final byte RELIABLE = 1;
+	//First frame of the handshake datagrams of MISUDPListener, followed by a u32 cookie
+	public static final byte HELLO = 2;
+	//Largest frame that fits into a datagram next to the header and the channel prefix
+	public static final int MAX_FRAME_SIZE = MISUDPListener.MAX_DATAGRAM_SIZE - HEADER_SIZE - 3;
+	public static final long RESEND_NANOS = 100000000L;
+	//About 100 resends, a peer that acks none of them is gone or never was there
+	public static final long ACK_TIMEOUT_NANOS = 10000000000L;
+	//Reliable messages in flight, further reliable frames wait in the outbound queue
+	public static final int MAX_UNACKED = 1024;
+	//Sent datagrams remembered for resolving acks
+	private static final int SENT_HISTORY = 1024;
+
+	private int localSequence;
+	private int nextMessageId;
+	private final ArrayDeque<Message> unacked;
+	private final int[] sentSequences;
+	private final ArrayList<ArrayList<Message>> sentMessages;
+
+	private int remoteSequence = -1;
+	private int ackBits;
+	//Set when a reliable message arrived that has not been acked yet
+	boolean ackPending;
+	private int expectedMessageId;
+	//Reliable messages that arrived ahead of the expected one
+	private final MISIntMap<MISPooledBuffer> held;
+
+	//Reliable messages sent again
+	public long resends;
+
+	public MISReliableChannel(){
+		unacked = new ArrayDeque<Message>();
+		sentSequences = new int[SENT_HISTORY];
+		sentMessages = new ArrayList<ArrayList<Message>>(SENT_HISTORY);
+		for(int i = 0; i < SENT_HISTORY; i++){
+			sentSequences[i] = -1;
+			sentMessages.add(new ArrayList<Message>(0));
+		}
+		held = new MISIntMap<MISPooledBuffer>();
+	}
+
+	/*
+	 * Sending
+	 */
+
+	public boolean isFull(){
+		return unacked.size() >= MAX_UNACKED;
+	}
+
+	public boolean hasUnacked(){
+		return !unacked.isEmpty();
+	}
+
+	/**
+	 * @param nowNanos
+	 * @return true when the oldest unacked message was first sent more than ACK_TIMEOUT_NANOS ago
+	 */
+	public boolean isExpired(long nowNanos){
+		while(!unacked.isEmpty() && unacked.peek().acked){
+			unacked.poll();
+		}
+		Message oldest = unacked.peek();
+		return oldest != null && oldest.firstSentNanos != 0 && nowNanos - oldest.firstSentNanos > ACK_TIMEOUT_NANOS;
+	}
+
+	/**
+	 * Starts a datagram, the frames put afterwards are recorded under its sequence
+	 * @param out cleared buffer
+	 */
+	void writeHeader(ByteBuffer out){
+		int slot = localSequence % SENT_HISTORY;
+		sentSequences[slot] = localSequence;
+		sentMessages.get(slot).clear();
+		out.putShort((short) localSequence);
+		//0xFFFF before anything arrived, a sequence the other side has not used yet
+		out.putShort((short) remoteSequence);
+		out.putInt(ackBits);
+	}
+
+	/**
+	 * The datagram started by writeHeader was sent
+	 */
+	void sent(){
+		localSequence = (localSequence + 1) & 0xFFFF;
+		ackPending = false;
+	}
+
+	/**
+	 * The datagram started by writeHeader was not sent
+	 */
+	void discard(){
+		sentSequences[localSequence % SENT_HISTORY] = -1;
+	}
+
+	/**
+	 * Takes over a reliable frame from the outbound queue, it is released once acked
+	 * @param frame
+	 * @return the message, due to be sent
+	 */
+	Message add(MISPooledBuffer frame){
+		Message message = new Message();
+		message.id = nextMessageId;
+		message.frame = frame;
+		nextMessageId = (nextMessageId + 1) & 0xFFFF;
+		unacked.add(message);
+		return message;
+	}
+
+	/**
+	 * Puts every unacked message that was never sent or is due for a resend
+	 * @param out
+	 * @param nowNanos
+	 * @return true when a due message did not fit
+	 */
+	boolean putDue(ByteBuffer out, long nowNanos){
+		while(!unacked.isEmpty() && unacked.peek().acked){
+			unacked.poll();
+		}
+		for(Message message : unacked){
+			if(!message.acked && (message.sentNanos == 0 || nowNanos - message.sentNanos >= RESEND_NANOS)){
+				if(message.sentNanos != 0){
+					resends++;
+				}
+				if(!put(message, out, nowNanos)){
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param message
+	 * @param out
+	 * @param nowNanos
+	 * @return false when the message does not fit, it stays due
+	 */
+	boolean put(Message message, ByteBuffer out, long nowNanos){
+		ByteBuffer frame = message.frame.buffer;
+		if(frame.remaining() + 3 > out.remaining()){
+			return false;
+		}
+		out.put(RELIABLE);
+		out.putShort((short) message.id);
+		int position = frame.position();
+		out.put(frame);
+		frame.position(position);
+		message.sentNanos = Math.max(1L, nowNanos);
+		if(message.firstSentNanos == 0){
+			message.firstSentNanos = message.sentNanos;
+		}
+		sentMessages.get(localSequence % SENT_HISTORY).add(message);
+		return true;
+	}
+
+	/*
+	 * Receiving
+	 */
+
+	/**
+	 * Reads the header of a received datagram and applies its acks
+	 * @param in positioned at the header, moved past it
+	 * @return false when the datagram is a duplicate or too old, its frames must be skipped
+	 */
+	boolean readHeader(ByteBuffer in){
+		int sequence = in.getShort() & 0xFFFF;
+		int ack = in.getShort() & 0xFFFF;
+		int bits = in.getInt();
+		acked(ack);
+		for(int i = 0; i < 32; i++){
+			if((bits & (1 << i)) != 0){
+				acked((ack - 1 - i) & 0xFFFF);
+			}
+		}
+		if(remoteSequence < 0){
+			remoteSequence = sequence;
+			ackBits = 0;
+			return true;
+		}
+		int difference = difference(sequence, remoteSequence);
+		if(difference > 0){
+			if(difference < 32){
+				ackBits = (ackBits << difference) | (1 << (difference - 1));
+			} else {
+				ackBits = difference == 32 ? 1 << 31 : 0;
+			}
+			remoteSequence = sequence;
+			return true;
+		}
+		if(difference == 0 || -difference > 32){
+			return false;
+		}
+		int bit = 1 << (-difference - 1);
+		if((ackBits & bit) != 0){
+			return false;
+		}
+		ackBits |= bit;
+		return true;
+	}
+
+	/**
+	 * Orders a received reliable message
+	 * @param id
+	 * @return 0 when it is the next to handle, 1 when it arrived early, -1 for a duplicate
+	 */
+	int order(int id){
+		ackPending = true;
+		int difference = difference(id, expectedMessageId);
+		if(difference == 0){
+			expectedMessageId = (expectedMessageId + 1) & 0xFFFF;
+			return 0;
+		}
+		if(difference < 0 || difference >= MAX_UNACKED || held.containsKey(id)){
+			return -1;
+		}
+		return 1;
+	}
+
+	/**
+	 * Keeps a copy of a message that arrived early
+	 * @param id
+	 * @param payload
+	 */
+	void hold(int id, ByteBuffer payload){
+		MISPooledBuffer copy = MISBufferPool.POOL.acquire(payload.remaining());
+		copy.buffer.put(payload.duplicate()).flip();
+		held.put(id, copy);
+	}
+
+	/**
+	 * @return the held message that is next in order, to be released by the caller, or null
+	 */
+	MISPooledBuffer nextHeld(){
+		MISPooledBuffer next = held.remove(expectedMessageId);
+		if(next != null){
+			expectedMessageId = (expectedMessageId + 1) & 0xFFFF;
+		}
+		return next;
+	}
+
+	/**
+	 * Releases every message in flight or held, used when the session ends
+	 */
+	void release(){
+		for(Message message : unacked){
+			if(!message.acked){
+				message.acked = true;
+				message.frame.release();
+			}
+		}
+		unacked.clear();
+		MISPooledBuffer next;
+		while(held.size() > 0){
+			next = held.remove(expectedMessageId);
+			if(next != null){
+				next.release();
+			}
+			expectedMessageId = (expectedMessageId + 1) & 0xFFFF;
+		}
+	}
+
+	private void acked(int sequence){
+		int slot = sequence % SENT_HISTORY;
+		if(sentSequences[slot] != sequence){
+			return;
+		}
+		sentSequences[slot] = -1;
+		ArrayList<Message> messages = sentMessages.get(slot);
+		for(int i = 0; i < messages.size(); i++){
+			Message message = messages.get(i);
+			if(!message.acked){
+				message.acked = true;
+				message.frame.release();
+			}
+		}
+		messages.clear();
+	}
+
+	/**
+	 * @return how far a is ahead of b on the 16 bit circle, negative when behind
+	 */
+	private static int difference(int a, int b){
+		int difference = (a - b) & 0xFFFF;
+		return difference >= 0x8000 ? difference - 0x10000 : difference;
+	}
+
+	static class Message {
+		int id;
+		MISPooledBuffer frame;
+		//System.nanoTime of the last send, 0 before the first
+		long sentNanos;
+		//System.nanoTime of the first send, 0 before it
+		long firstSentNanos;
+		boolean acked;
+	}
+
+}
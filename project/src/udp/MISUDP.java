@@ -0,0 +1,99 @@
+package udp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+
+import connector.MISClient;
+import connector.MISConnector;
+import connector.MISPooledBuffer;
+
+/**
+ * UDP connector for a single port. Clients are sessions keyed by their source
+ * address, they are created once the address completed the hello handshake of
+ * MISUDPListener and live until dropped.
+ */
+public class MISUDP extends MISConnector {
+
+	private DatagramChannel channel;
+	private MISUDPListener listener;
+	private boolean running;
+
+	public MISUDP(int port){
+		super(port);
+	}
+
+	@Override
+	public synchronized boolean start() {
+		if(running){
+			return false;
+		}
+		try {
+			channel = DatagramChannel.open();
+			channel.configureBlocking(false);
+			channel.socket().setReuseAddress(true);
+			channel.bind(new InetSocketAddress(port));
+			listener = new MISUDPListener(this, channel);
+			Thread thread = new Thread(listener, "MIS-UDP-"+port);
+			thread.setDaemon(true);
+			thread.start();
+			running = true;
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	@Override
+	public synchronized boolean stop() {
+		if(!running){
+			return false;
+		}
+		running = false;
+		listener.shutdown();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return true;
+	}
+
+	@Override
+	public boolean drop() {
+		for(MISClient client : clients.values()){
+			drop(client);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean drop(MISClient client) {
+		if(!(client instanceof MISUDPClient)){
+			return false;
+		}
+		listener.scheduleClose((MISUDPClient) client);
+		return true;
+	}
+
+	@Override
+	protected boolean enqueue(MISClient client, MISPooledBuffer frame){
+		if(!(client instanceof MISUDPClient) || frame.buffer.remaining() > MISReliableChannel.MAX_FRAME_SIZE){
+			frame.release();
+			return false;
+		}
+		MISUDPClient udpClient = (MISUDPClient) client;
+		if(!udpClient.queue(frame)){
+			return false;
+		}
+		queued(udpClient);
+		return true;
+	}
+
+	@Override
+	protected void scheduleWrite(MISClient client){
+		listener.scheduleWrite((MISUDPClient) client);
+	}
+
+}
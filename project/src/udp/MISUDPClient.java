@@ -0,0 +1,32 @@
+package udp;
+
+import java.net.SocketAddress;
+
+import connector.MISClient;
+import connector.MISPooledBuffer;
+
+public class MISUDPClient extends MISClient {
+
+	//Packed datagram the socket did not take, sent before anything else
+	MISPooledBuffer unsent;
+	//Sequence numbers, acks and resends of the session
+	final MISReliableChannel reliability;
+
+	public MISUDPClient(MISUDP connector, SocketAddress address) {
+		super(connector, address);
+		reliability = new MISReliableChannel();
+	}
+
+	/**
+	 * Releases the queued frames and the unsent datagram, used when the client goes away
+	 */
+	void releaseBuffers(){
+		if(unsent != null){
+			unsent.release();
+			unsent = null;
+		}
+		reliability.release();
+		releaseOutbound();
+	}
+
+}
@@ -0,0 +1,422 @@
+package udp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import connector.MISBufferPool;
+import connector.MISPacketHandler;
+import connector.MISPooledBuffer;
+
+/**
+ * Event loop of a MISUDP connector. A wakeup drains up to MAX_DATAGRAMS_PER_WAKEUP
+ * datagrams into a fixed set of reusable buffers before any of them is handled.
+ * Every datagram starts with a MISReliableChannel header and carries one or more frames,
+ * each [channel][u16 message id, reliable only][4 byte length][payload].
+ * Reliable frames are handled in order and resent until acked, the loop wakes up
+ * every RESEND_NANOS while any session waits for acks. They are paid for from the
+ * clients message rate before their datagram is acked, a datagram over the budget is left
+ * unacked and sent again, so a client must pack fewer reliable frames into one than its rate.
+ * An unknown address only gets a session once it echoed a cookie: its hello datagram,
+ * [header][HELLO][u32 cookie, 0 at first] padded to HELLO_SIZE bytes, is answered with a
+ * smaller one carrying the cookie for its address, which nothing is kept for.
+ * A spoofed source address so gets neither a session nor a larger reply.
+ */
+public class MISUDPListener implements Runnable {
+
+	public static final int MAX_DATAGRAMS_PER_WAKEUP = 64;
+	public static final int MAX_DATAGRAM_SIZE = 1500;
+	//Smallest hello datagram, so the cookie reply is never larger than what caused it
+	public static final int HELLO_SIZE = 64;
+	public static final int MAX_SESSIONS = 4096;
+	//A cookie is accepted during two of these periods
+	private static final long COOKIE_NANOS = 10000000000L;
+
+	private final MISUDP connector;
+	private final DatagramChannel channel;
+	private final Selector selector;
+	private final SelectionKey key;
+	private final MISUDPSender sender;
+	//Only touched by the loop thread
+	private final HashMap<SocketAddress, MISUDPClient> sessions;
+	private final MISPooledBuffer[] pooledBuffers;
+	private final ByteBuffer[] buffers;
+	private final SocketAddress[] addresses;
+	private final ArrayDeque<MISUDPClient> blockedWrites;
+	private final ConcurrentLinkedQueue<MISUDPClient> pendingWrites;
+	private final ConcurrentLinkedQueue<MISUDPClient> pendingCloses;
+	//Sessions with reliable messages in flight
+	private final HashSet<MISUDPClient> awaitingAcks;
+	//Key of the cookies, only known to this listener
+	private final long cookieSecret;
+	private final ByteBuffer cookieReply;
+	private volatile boolean running;
+
+	public MISUDPListener(MISUDP connector, DatagramChannel channel) throws IOException {
+		this.connector = connector;
+		this.channel = channel;
+		selector = Selector.open();
+		key = channel.register(selector, SelectionKey.OP_READ);
+		sender = new MISUDPSender(channel);
+		sessions = new HashMap<SocketAddress, MISUDPClient>();
+		pooledBuffers = new MISPooledBuffer[MAX_DATAGRAMS_PER_WAKEUP];
+		buffers = new ByteBuffer[MAX_DATAGRAMS_PER_WAKEUP];
+		for(int i = 0; i < buffers.length; i++){
+			pooledBuffers[i] = MISBufferPool.POOL.acquire(MAX_DATAGRAM_SIZE);
+			buffers[i] = pooledBuffers[i].buffer;
+		}
+		addresses = new SocketAddress[MAX_DATAGRAMS_PER_WAKEUP];
+		blockedWrites = new ArrayDeque<MISUDPClient>();
+		pendingWrites = new ConcurrentLinkedQueue<MISUDPClient>();
+		pendingCloses = new ConcurrentLinkedQueue<MISUDPClient>();
+		awaitingAcks = new HashSet<MISUDPClient>();
+		cookieSecret = new SecureRandom().nextLong();
+		cookieReply = ByteBuffer.allocate(MISReliableChannel.HEADER_SIZE + 5);
+		running = true;
+	}
+
+	public void scheduleWrite(MISUDPClient client){
+		if(client.writePending.compareAndSet(false, true)){
+			pendingWrites.add(client);
+			selector.wakeup();
+		}
+	}
+
+	public void scheduleClose(MISUDPClient client){
+		pendingCloses.add(client);
+		selector.wakeup();
+	}
+
+	public void shutdown(){
+		running = false;
+		selector.wakeup();
+	}
+
+	public MISUDPSender getSender(){
+		return sender;
+	}
+
+	@Override
+	public void run() {
+		while(running){
+			try {
+				if(awaitingAcks.isEmpty()){
+					selector.select();
+				} else {
+					selector.select(MISReliableChannel.RESEND_NANOS / 1000000);
+				}
+				boolean readable = key.isValid() && key.isReadable();
+				boolean writable = key.isValid() && key.isWritable();
+				selector.selectedKeys().clear();
+				runPending();
+				if(readable){
+					receive();
+				}
+				if(writable){
+					retryBlocked();
+				}
+				resendDue();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		for(MISUDPClient client : sessions.values()){
+			client.releaseBuffers();
+			connector.clientDisconnected(client);
+		}
+		sessions.clear();
+		for(MISPooledBuffer pooled : pooledBuffers){
+			pooled.release();
+		}
+		sender.release();
+		try {
+			selector.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void runPending() throws IOException{
+		MISUDPClient client;
+		while((client = pendingCloses.poll()) != null){
+			if(sessions.remove(client.address) != null){
+				awaitingAcks.remove(client);
+				client.releaseBuffers();
+				connector.clientDisconnected(client);
+			}
+		}
+		while((client = pendingWrites.poll()) != null){
+			client.writePending.set(false);
+			if(!blockedWrites.isEmpty()){
+				//Keep datagram order fair while the socket is full
+				if(!blockedWrites.contains(client)){
+					blockedWrites.add(client);
+				}
+			} else {
+				write(client);
+			}
+		}
+	}
+
+	private void write(MISUDPClient client) throws IOException{
+		if(!sender.write(client)){
+			blockedWrites.add(client);
+			key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+		if(client.reliability.hasUnacked()){
+			awaitingAcks.add(client);
+		}
+	}
+
+	/**
+	 * Writes the sessions with reliable messages in flight, the sender puts the ones due for a resend.
+	 * Sessions that stopped acking are dropped instead.
+	 * @throws IOException
+	 */
+	private void resendDue() throws IOException{
+		if(awaitingAcks.isEmpty() || !blockedWrites.isEmpty()){
+			return;
+		}
+		long now = System.nanoTime();
+		Iterator<MISUDPClient> iterator = awaitingAcks.iterator();
+		while(iterator.hasNext()){
+			MISUDPClient client = iterator.next();
+			if(!client.reliability.hasUnacked()){
+				iterator.remove();
+			} else if(client.reliability.isExpired(now)){
+				iterator.remove();
+				connector.drop(client);
+			} else if(!sender.write(client)){
+				blockedWrites.add(client);
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				return;
+			}
+		}
+	}
+
+	private void retryBlocked() throws IOException{
+		MISUDPClient client;
+		while((client = blockedWrites.peek()) != null){
+			if(!sender.write(client)){
+				return;
+			}
+			blockedWrites.poll();
+		}
+		key.interestOps(SelectionKey.OP_READ);
+	}
+
+	private void receive() throws IOException{
+		int received = 0;
+		while(received < buffers.length){
+			ByteBuffer buffer = buffers[received];
+			buffer.clear();
+			SocketAddress address = channel.receive(buffer);
+			if(address == null){
+				break;
+			}
+			buffer.flip();
+			addresses[received] = address;
+			received++;
+		}
+		MISPacketHandler handler = connector.getPacketHandler();
+		long now = System.nanoTime();
+		for(int i = 0; i < received; i++){
+			SocketAddress address = addresses[i];
+			addresses[i] = null;
+			ByteBuffer in = buffers[i];
+			if(in.remaining() < MISReliableChannel.HEADER_SIZE){
+				continue;
+			}
+			boolean hello = in.remaining() > MISReliableChannel.HEADER_SIZE
+					&& in.get(in.position() + MISReliableChannel.HEADER_SIZE) == MISReliableChannel.HELLO;
+			MISUDPClient client = sessions.get(address);
+			if(client == null){
+				if(hello){
+					accept(address, in, now);
+				}
+				continue;
+			}
+			client.touch(now);
+			MISReliableChannel reliability = client.reliability;
+			if(hello){
+				//The client missed that it got a session, tell it again
+				reliability.ackPending = true;
+				scheduleWrite(client);
+				continue;
+			}
+			//Reliable frames are paid for before the datagram is acked, one over the budget would be lost
+			int reliableFrames = reliableFrames(in);
+			if(reliableFrames > 0 && handler != null && !client.rateLimiter.tryAcquire(now, reliableFrames)){
+				//Left unacked, the client sends it again
+				continue;
+			}
+			if(!reliability.readHeader(in)){
+				continue;
+			}
+			while(in.remaining() >= 5){
+				byte channel = in.get();
+				int id = 0;
+				if(channel == MISReliableChannel.RELIABLE){
+					if(in.remaining() < 6){
+						break;
+					}
+					id = in.getShort() & 0xFFFF;
+				} else if(channel != MISReliableChannel.UNRELIABLE){
+					break;
+				}
+				int start = in.position();
+				int length = in.getInt(start);
+				if(length < 0 || length > in.remaining() - 4){
+					break;
+				}
+				int end = start + 4 + length;
+				int limit = in.limit();
+				in.position(start + 4);
+				in.limit(end);
+				if(channel == MISReliableChannel.UNRELIABLE){
+					if(handler != null && client.rateLimiter.tryAcquire(now)){
+						handle(handler, client, in);
+					}
+				} else {
+					int order = reliability.order(id);
+					if(order == 0){
+						handle(handler, client, in);
+						MISPooledBuffer held;
+						while((held = reliability.nextHeld()) != null){
+							handle(handler, client, held.buffer);
+							held.release();
+						}
+					} else if(order > 0){
+						reliability.hold(id, in);
+					}
+				}
+				in.limit(limit);
+				in.position(end);
+			}
+			if(reliability.ackPending){
+				//Ack the reliable messages even when nothing else is queued
+				scheduleWrite(client);
+			}
+		}
+	}
+
+	/**
+	 * Answers the hello of an unknown address with its cookie, or starts a session
+	 * when the hello echoes a valid one and there is room for another session
+	 * @param address
+	 * @param in the hello datagram
+	 * @param now
+	 * @throws IOException
+	 */
+	private void accept(SocketAddress address, ByteBuffer in, long now) throws IOException{
+		if(in.remaining() < HELLO_SIZE || !(address instanceof InetSocketAddress)){
+			return;
+		}
+		long period = now / COOKIE_NANOS;
+		int expected = cookie((InetSocketAddress) address, period);
+		int cookie = in.getInt(in.position() + MISReliableChannel.HEADER_SIZE + 1);
+		if(cookie == expected || cookie == cookie((InetSocketAddress) address, period - 1)){
+			if(sessions.size() >= MAX_SESSIONS){
+				return;
+			}
+			MISUDPClient client = new MISUDPClient(connector, address);
+			client.touch(now);
+			sessions.put(address, client);
+			connector.clientConnected(client);
+			//An empty datagram tells the client it has a session, even when nothing else is queued
+			client.reliability.ackPending = true;
+			scheduleWrite(client);
+			return;
+		}
+		cookieReply.clear();
+		cookieReply.putShort((short) 0);
+		cookieReply.putShort((short) 0xFFFF);
+		cookieReply.putInt(0);
+		cookieReply.put(MISReliableChannel.HELLO);
+		cookieReply.putInt(expected);
+		cookieReply.flip();
+		//Not resent, the client sends its hello again when the reply got lost
+		channel.send(cookieReply, address);
+	}
+
+	/**
+	 * @param address
+	 * @param period
+	 * @return the cookie of the address in the period, never 0
+	 */
+	private int cookie(InetSocketAddress address, long period){
+		long hash = cookieSecret ^ period * 0x9E3779B97F4A7C15L;
+		byte[] host = address.getAddress().getAddress();
+		for(int i = 0; i < host.length; i++){
+			hash = mix(hash ^ (host[i] & 0xFF));
+		}
+		hash = mix(hash ^ address.getPort());
+		int cookie = (int) (hash ^ hash >>> 32);
+		return cookie != 0 ? cookie : 1;
+	}
+
+	//Finalizer of SplitMix64
+	private static long mix(long hash){
+		hash = (hash ^ hash >>> 30) * 0xBF58476D1CE4E5B9L;
+		hash = (hash ^ hash >>> 27) * 0x94D049BB133111EBL;
+		return hash ^ hash >>> 31;
+	}
+
+	/**
+	 * Counts the reliable frames of a datagram, without moving its position
+	 * @param in positioned at the header
+	 * @return number of reliable frames up to the first malformed one
+	 */
+	private static int reliableFrames(ByteBuffer in){
+		int count = 0;
+		int position = in.position() + MISReliableChannel.HEADER_SIZE;
+		int limit = in.limit();
+		while(limit - position >= 5){
+			byte channel = in.get(position);
+			if(channel == MISReliableChannel.RELIABLE){
+				if(limit - position < 7){
+					break;
+				}
+				position += 3;
+			} else if(channel == MISReliableChannel.UNRELIABLE){
+				position++;
+			} else {
+				break;
+			}
+			int length = in.getInt(position);
+			if(length < 0 || length > limit - position - 4){
+				break;
+			}
+			if(channel == MISReliableChannel.RELIABLE){
+				count++;
+			}
+			position += 4 + length;
+		}
+		return count;
+	}
+
+	/**
+	 * Hands a frame to the handler, unreliable frames over the clients budget are skipped
+	 * before they get here and reliable ones were paid for with their datagram
+	 */
+	private void handle(MISPacketHandler handler, MISUDPClient client, ByteBuffer payload){
+		if(handler != null){
+			try {
+				handler.packetReceived(client, payload);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+package udp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import connector.MISBufferPool;
+import connector.MISPooledBuffer;
+
+/**
+ * Sends the outbound queues of MISUDPClients. Queued frames are packed together
+ * into datagrams of up to MAX_DATAGRAM_SIZE bytes, so the frames of one tick
+ * usually leave in a single send call. Datagrams follow the MISReliableChannel format.
+ */
+public class MISUDPSender {
+
+	private final DatagramChannel channel;
+	//Packing space, only used by the listener thread
+	private final MISPooledBuffer packing;
+	//Number of send calls made on the channel
+	public long sends;
+
+	public MISUDPSender(DatagramChannel channel){
+		this.channel = channel;
+		packing = MISBufferPool.POOL.acquire(MISUDPListener.MAX_DATAGRAM_SIZE);
+	}
+
+	/**
+	 * Sends the queued frames of the client and its reliable messages that are due,
+	 * packed into as few datagrams as possible. A datagram with only the header is sent
+	 * when reliable messages of the client wait for their ack.
+	 * @param client
+	 * @return true when everything due was sent, false when the socket is full
+	 * @throws IOException
+	 */
+	public boolean write(MISUDPClient client) throws IOException{
+		if(client.unsent != null){
+			sends++;
+			if(channel.send(client.unsent.buffer, client.address) == 0){
+				return false;
+			}
+			client.unsent.release();
+			client.unsent = null;
+		}
+		MISReliableChannel reliability = client.reliability;
+		ByteBuffer datagram = packing.buffer;
+		long now = System.nanoTime();
+		while(true){
+			datagram.clear();
+			datagram.limit(MISUDPListener.MAX_DATAGRAM_SIZE);
+			reliability.writeHeader(datagram);
+			boolean full = reliability.putDue(datagram, now);
+			MISPooledBuffer frame;
+			//Reliable frames stay queued while the window is full, the unreliable ones still go out
+			while(!full && !reliability.isFull() && (frame = client.takeReliable()) != null){
+				full = !reliability.put(reliability.add(frame), datagram, now);
+			}
+			while(!full && (frame = client.nextUnreliable()) != null){
+				if(frame.buffer.remaining() < datagram.remaining()){
+					datagram.put(MISReliableChannel.UNRELIABLE);
+					datagram.put(frame.buffer);
+					client.finishOutbound();
+				} else {
+					full = true;
+				}
+			}
+			if(datagram.position() == MISReliableChannel.HEADER_SIZE && !reliability.ackPending){
+				reliability.discard();
+				return true;
+			}
+			datagram.flip();
+			reliability.sent();
+			sends++;
+			if(channel.send(datagram, client.address) == 0){
+				//The packed frames are released already, keep a copy of the datagram
+				client.unsent = MISBufferPool.POOL.acquire(datagram.remaining());
+				client.unsent.buffer.put(datagram).flip();
+				return false;
+			}
+			if(!full){
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Gives the packing space back to the pool, called when the listener stops
+	 */
+	public void release(){
+		packing.release();
+	}
+
+}